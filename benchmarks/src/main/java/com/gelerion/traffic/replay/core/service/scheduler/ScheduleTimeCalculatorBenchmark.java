@@ -0,0 +1,120 @@
+package com.gelerion.traffic.replay.core.service.scheduler;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.temporal.ChronoUnit.MILLIS;
+
+/**
+ * The timing of a single event on the scheduling path, run with -prof gc to see the allocations per event.
+ *
+ * compute       -- ScheduleTimeCalculator and LateEventPolicy on epoch millis, a constant speedup factor
+ * computeRamped -- the same with a ramping rate profile
+ * legacyCompute -- the java.time version it replaced
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScheduleTimeCalculatorBenchmark {
+    private static final int EVENTS = 1024;
+
+    private ScheduleTimeCalculator calculator;
+    private ScheduleTimeCalculator rampedCalculator;
+    private LateEventPolicy lateEventPolicy;
+    private LegacyScheduleTimeCalculator legacyCalculator;
+
+    private Instant[] timestamps;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        //the meters are recorded for real, as in production
+        Metrics.addRegistry(new SimpleMeterRegistry());
+
+        Instant queryCutOffTime = Instant.parse("2019-10-28T00:00:00Z");
+        //still in the future for the duration of the run, the events are on time
+        Instant schedulingStartTime = Instant.now().plus(Duration.ofDays(1));
+
+        calculator = new ScheduleTimeCalculator(RateProfile.constant(2), queryCutOffTime, schedulingStartTime);
+        rampedCalculator = new ScheduleTimeCalculator(RateProfile.parse(List.of("30m 1x->8x", "1h 8x"), 1),
+                queryCutOffTime, schedulingStartTime);
+        lateEventPolicy = new LateEventPolicy(LateEventPolicy.DROP, 0, 0);
+        legacyCalculator = new LegacyScheduleTimeCalculator(2, queryCutOffTime, schedulingStartTime);
+
+        Random random = new Random(42);
+        timestamps = new Instant[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            timestamps[i] = queryCutOffTime.plusMillis(random.nextInt((int) Duration.ofHours(6).toMillis()));
+        }
+    }
+
+    @Benchmark
+    public long compute() {
+        return delayMillis(calculator, nextTimestamp());
+    }
+
+    @Benchmark
+    public long computeRamped() {
+        return delayMillis(rampedCalculator, nextTimestamp());
+    }
+
+    @Benchmark
+    public long legacyCompute() {
+        return legacyCalculator.compute(nextTimestamp());
+    }
+
+    //what ScheduleService.scheduleEvent does before handing the delay to the scheduler
+    private long delayMillis(ScheduleTimeCalculator calculator, Instant timestamp) {
+        long nowMillis = System.currentTimeMillis();
+        long fireTimeMillis = lateEventPolicy.reschedule(calculator.compute(timestamp), nowMillis);
+        return fireTimeMillis == LateEventPolicy.DROPPED ? -1 : fireTimeMillis - nowMillis;
+    }
+
+    private Instant nextTimestamp() {
+        return timestamps[next++ & (EVENTS - 1)];
+    }
+
+    //ScheduleTimeCalculator.compute before it moved to epoch millis, the delay is what the scheduler was given
+    private static class LegacyScheduleTimeCalculator {
+        private final DistributionSummary schedulingDelayHistogram = Metrics.summary("scheduling", "time", "delay-ms");
+        private final DistributionSummary relativeTimeHistogram    = Metrics.summary("scheduling", "time", "relative");
+
+        private final long speedupFactor;
+        private final ZonedDateTime queryCutOffTime;
+        private final ZonedDateTime schedulingStartTime;
+
+        LegacyScheduleTimeCalculator(long speedupFactor, Instant queryCutOffTime, Instant schedulingStartTime) {
+            this.speedupFactor = speedupFactor;
+            this.queryCutOffTime = ZonedDateTime.parse(queryCutOffTime.toString());
+            this.schedulingStartTime = ZonedDateTime.parse(schedulingStartTime.toString());
+        }
+
+        long compute(Instant originalStartTime) {
+            if (queryCutOffTime.toInstant().isAfter(originalStartTime)) {
+                return -1;
+            }
+
+            Duration relativeStartTime = Duration.ofMillis(
+                    MILLIS.between(queryCutOffTime.toInstant(), originalStartTime) / speedupFactor
+            );
+            ZonedDateTime absoluteStartTime = schedulingStartTime.plus(relativeStartTime);
+            Duration schedulingDelay = Duration.between(Instant.now(), absoluteStartTime.toInstant());
+
+            relativeTimeHistogram.record(relativeStartTime.toMillis());
+            schedulingDelayHistogram.record(schedulingDelay.toMillis());
+            return schedulingDelay.toMillis();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.gelerion.traffic.replay.druid.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Type;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Parsing a druid query log record as it comes out of kafka, run with -prof gc to see the allocations per record.
+ *
+ * parse       -- QueryLogRecordParser, a single pass over the bytes
+ * legacyParse -- the parser it replaced, the record decoded into a String, split on tabs and the meta read with Gson
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryLogRecordParserBenchmark {
+    private static final String QUERY = "{\"queryType\":\"groupBy\",\"dataSource\":{\"type\":\"table\",\"name\":\"wikipedia\"}," +
+            "\"intervals\":{\"type\":\"intervals\",\"intervals\":[\"2019-10-27T00:00:00.000Z/2019-10-28T00:00:00.000Z\"]}," +
+            "\"filter\":{\"type\":\"and\",\"fields\":[{\"type\":\"selector\",\"dimension\":\"countryName\",\"value\":\"France\"}," +
+            "{\"type\":\"in\",\"dimension\":\"channel\",\"values\":[\"#fr.wikipedia\",\"#en.wikipedia\"]}]}," +
+            "\"granularity\":{\"type\":\"all\"},\"dimensions\":[{\"type\":\"default\",\"dimension\":\"page\",\"outputName\":\"page\"}]," +
+            "\"aggregations\":[{\"type\":\"longSum\",\"name\":\"edits\",\"fieldName\":\"count\"}," +
+            "{\"type\":\"doubleSum\",\"name\":\"delta\",\"fieldName\":\"delta\"}]," +
+            "\"limitSpec\":{\"type\":\"default\",\"limit\":100,\"columns\":[{\"dimension\":\"edits\",\"direction\":\"descending\"}]}," +
+            "\"context\":{\"queryId\":\"a1b2c3d4-e5f6-4711-8899-aabbccddeeff\",\"timeout\":60000}}";
+    private static final String META = "{\"query/time\":\"123\",\"query/bytes\":\"20480\",\"success\":\"true\"," +
+            "\"identity\":\"allowAll\",\"remoteAddress\":\"10.0.0.1\"}";
+    private static final String[] TIMESTAMPS = {
+            "2019-10-28T02:11:17.036Z", "2019-10-28T13:45:12Z", "2019-10-28T23:59:59.999Z", "2019-10-29T00:00:00.5Z"
+    };
+
+    private final QueryLogRecordParser parser = new QueryLogRecordParser();
+    private byte[][] records;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        records = new byte[TIMESTAMPS.length][];
+        for (int i = 0; i < TIMESTAMPS.length; i++) {
+            records[i] = (TIMESTAMPS[i] + "\t10.0.0.1\t" + QUERY + "\t" + META).getBytes(UTF_8);
+        }
+    }
+
+    @Benchmark
+    public Object parse() {
+        byte[] record = nextRecord();
+        return parser.parse(record, 0, record.length);
+    }
+
+    @Benchmark
+    public void legacyParse(Blackhole blackhole) {
+        LegacyQueryLogRecordParser.parse(new String(nextRecord(), UTF_8), blackhole);
+    }
+
+    private byte[] nextRecord() {
+        return records[next++ & (TIMESTAMPS.length - 1)];
+    }
+
+    //QueryLogRecordParser.doParse before the single pass parser, the record used to be deserialized into a String
+    private static class LegacyQueryLogRecordParser {
+        private static final Type MAP_TYPE = new TypeToken<Map<String, String>>(){}.getType();
+        private static final Gson GSON = new Gson();
+
+        static void parse(String record, Blackhole blackhole) {
+            String[] split = record.split("\t");
+
+            String timestamp = split[0];
+            String query = split[2];
+            String queryMeta = split[3];
+
+            Map<String, String> meta = GSON.fromJson(queryMeta, MAP_TYPE);
+            long responseTime = Long.parseLong(meta.get("query/time"));
+            Instant startTime = Instant.parse(timestamp);
+
+            blackhole.consume(responseTime);
+            blackhole.consume(startTime);
+            blackhole.consume(query);
+        }
+    }
+}
@@ -1,10 +1,10 @@
 package com.gelerion.traffic.replay.core;
 
 import com.gelerion.traffic.replay.core.config.guice.Initializer;
-import com.gelerion.traffic.replay.core.kafka.TrafficReader;
 import com.gelerion.traffic.replay.core.metrics.PrefixStrategies;
 import com.gelerion.traffic.replay.core.metrics.Reporters;
 import com.gelerion.traffic.replay.core.service.scheduler.ScheduleService;
+import com.gelerion.traffic.replay.core.source.TrafficSource;
 import com.gelerion.traffic.replay.core.utils.ShutdownService;
 import com.google.inject.Injector;
 import lombok.extern.slf4j.Slf4j;
@@ -27,7 +27,7 @@ public class TrafficReplyApplication {
         ScheduleService scheduler = injector.getInstance(ScheduleService.class);
         scheduler.startScheduling();
 
-        TrafficReader trafficReader = injector.getInstance(TrafficReader.class);
-        trafficReader.startProcessing();
+        TrafficSource trafficSource = injector.getInstance(TrafficSource.class);
+        trafficSource.startProcessing();
     }
 }
@@ -1,15 +1,45 @@
 package com.gelerion.traffic.replay.core.channels;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 public interface AsyncChannel<T> {
 
     void put(T record);
 
+    /**
+     * Blocks until all the records are in, takes the lock once per batch rather than once per record
+     */
+    void putAll(List<T> records);
+
     boolean offer(T record);
 
+    /**
+     * Never blocks, takes records from the head of the list for as long as there is room
+     *
+     * @return number of records accepted
+     */
+    int offerAll(List<T> records);
+
     T get();
 
     T pool();
 
+    /**
+     * Blocks until at least one record is available, then moves up to maxRecords into the collection
+     *
+     * @return number of records drained
+     */
+    int drainTo(Collection<? super T> collection, int maxRecords);
+
+    /**
+     * Same as {@link #drainTo(Collection, int)} but gives up after the timeout
+     *
+     * @return number of records drained, 0 if the timeout elapsed
+     */
+    int drainTo(Collection<? super T> collection, int maxRecords, long timeout, TimeUnit unit);
+
     void interrupt();
 
 }
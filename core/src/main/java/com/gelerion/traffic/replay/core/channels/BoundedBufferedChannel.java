@@ -7,31 +7,65 @@ import lombok.SneakyThrows;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.cfg4j.provider.ConfigurationProvider;
 
-import java.util.Optional;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
+/**
+ * Bounded queue guarded by a single lock, batch operations move a whole batch per lock acquisition and signal.
+ */
 @Singleton
-public class BoundedBufferedChannel implements AsyncChannel<ConsumerRecord<String, String>> {
-    private final BlockingQueue<ConsumerRecord<String, String>> queue;
+public class BoundedBufferedChannel implements AsyncChannel<ConsumerRecord<byte[], byte[]>> {
+    public static final String NAME = "blocking-queue";
+    private static final long WAIT_NANOS = SECONDS.toNanos(10);
+
+    private final ArrayDeque<ConsumerRecord<byte[], byte[]>> queue;
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
     private AtomicBoolean interrupted = new AtomicBoolean(false);
 
     @Inject
     public BoundedBufferedChannel(ConfigurationProvider config) {
-        this.queue = new ArrayBlockingQueue<>(config.getProperty("channel.capacity", Integer.class));
+        this.capacity = config.getProperty("channel.capacity", Integer.class);
+        this.queue = new ArrayDeque<>(capacity);
+    }
+
+    @Override
+    public void put(ConsumerRecord<byte[], byte[]> record) {
+        putAll(List.of(record));
     }
 
     @SneakyThrows(InterruptedException.class)
     @Override
-    public void put(ConsumerRecord<String, String> record) {
-        boolean result;
-        do {
-            throwIfInterrupted();
-            result = queue.offer(record, 10, SECONDS);
-        } while (!result);
+    public void putAll(List<ConsumerRecord<byte[], byte[]>> records) {
+        int next = 0;
+        lock.lockInterruptibly();
+        try {
+            while (next < records.size()) {
+                while (queue.size() == capacity) {
+                    throwIfInterrupted();
+                    notFull.awaitNanos(WAIT_NANOS);
+                }
+
+                int free = capacity - queue.size();
+                int end = Math.min(records.size(), next + free);
+                for (; next < end; next++) {
+                    queue.addLast(records.get(next));
+                }
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     private void throwIfInterrupted() throws InterruptedException {
@@ -42,21 +76,109 @@ public class BoundedBufferedChannel implements AsyncChannel<ConsumerRecord<Strin
 
     @SneakyThrows(InterruptedException.class)
     @Override
-    public boolean offer(ConsumerRecord<String, String> record) {
-        return queue.offer(record, 10, SECONDS);
+    public boolean offer(ConsumerRecord<byte[], byte[]> record) {
+        long nanos = WAIT_NANOS;
+        lock.lockInterruptibly();
+        try {
+            while (queue.size() == capacity) {
+                if (nanos <= 0) return false;
+                nanos = notFull.awaitNanos(nanos);
+            }
+
+            queue.addLast(record);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @SneakyThrows(InterruptedException.class)
     @Override
-    public ConsumerRecord<String, String> get() {
-        return queue.take();
+    public int offerAll(List<ConsumerRecord<byte[], byte[]>> records) {
+        throwIfInterrupted();
+        lock.lock();
+        try {
+            int accepted = Math.min(records.size(), capacity - queue.size());
+            for (int i = 0; i < accepted; i++) {
+                queue.addLast(records.get(i));
+            }
+            if (accepted > 0) notEmpty.signal();
+            return accepted;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @SneakyThrows(InterruptedException.class)
     @Override
-    public ConsumerRecord<String, String> pool() {
-        return Optional.ofNullable(queue.poll(10, SECONDS))
-                .orElse(KafkaRecords.EMPTY_RECORD);
+    public ConsumerRecord<byte[], byte[]> get() {
+        lock.lockInterruptibly();
+        try {
+            while (queue.isEmpty()) {
+                notEmpty.await();
+            }
+            return take();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    @Override
+    public ConsumerRecord<byte[], byte[]> pool() {
+        long nanos = WAIT_NANOS;
+        lock.lockInterruptibly();
+        try {
+            while (queue.isEmpty()) {
+                if (nanos <= 0) return KafkaRecords.EMPTY_RECORD;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return take();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super ConsumerRecord<byte[], byte[]>> collection, int maxRecords) {
+        return drainTo(collection, maxRecords, Long.MAX_VALUE, NANOSECONDS);
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    @Override
+    public int drainTo(Collection<? super ConsumerRecord<byte[], byte[]>> collection, int maxRecords,
+                       long timeout, TimeUnit unit) {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (queue.isEmpty()) {
+                if (nanos == Long.MAX_VALUE) {
+                    notEmpty.await();
+                } else {
+                    if (nanos <= 0) return 0;
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+            }
+
+            int drained = 0;
+            while (drained < maxRecords && !queue.isEmpty()) {
+                collection.add(queue.pollFirst());
+                drained++;
+            }
+            //the producer might wait for more room than a single record
+            notFull.signalAll();
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //lock must be held
+    private ConsumerRecord<byte[], byte[]> take() {
+        ConsumerRecord<byte[], byte[]> record = queue.pollFirst();
+        notFull.signal();
+        return record;
     }
 
     @Override
@@ -0,0 +1,236 @@
+package com.gelerion.traffic.replay.core.channels;
+
+import com.gelerion.traffic.replay.core.kafka.types.KafkaRecords;
+import com.gelerion.traffic.replay.core.source.TrafficSource;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.cfg4j.provider.ConfigurationProvider;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Preallocated ring buffer, every slot carries its own sequence (Vyukov's bounded queue):
+ *
+ *   slot sequence == position          -- the slot is free for the producer claiming that position
+ *   slot sequence == position + 1      -- the slot holds a record for the consumer reading that position
+ *
+ * A single producer claims positions with a plain write, several producers with a CAS. Producers are the writer
+ * threads of the configured source: kafka consumer threads, file readers or segment readers.
+ * There is exactly one consumer, the scheduling thread.
+ */
+@Slf4j
+@Singleton
+public class RingBufferChannel implements AsyncChannel<ConsumerRecord<byte[], byte[]>> {
+    public static final String NAME = "ring-buffer";
+    private static final long WAIT_NANOS = SECONDS.toNanos(10);
+
+    private final Object[] buffer;
+    private final AtomicLongArray slotSequences;
+    private final int mask;
+    private final boolean multiProducer;
+
+    private final Sequence producerSequence = new Sequence(); //next position to claim
+    private final Sequence consumerSequence = new Sequence(); //next position to read, written by the consumer only
+
+    private final WaitStrategy producerWait;
+    private final WaitStrategy consumerWait;
+    private AtomicBoolean interrupted = new AtomicBoolean(false);
+
+    @Inject
+    public RingBufferChannel(ConfigurationProvider config) {
+        this(config.getProperty("channel.capacity", Integer.class),
+                TrafficSource.producerThreads(config) > 1,
+                config.getProperty("channel.ring-buffer.wait-strategy", String.class));
+    }
+
+    public RingBufferChannel(int capacity, boolean multiProducer, String waitStrategy) {
+        int size = capacity <= 1 ? 2 : Integer.highestOneBit(capacity - 1) << 1; //round up to the power of two
+        this.buffer = new Object[size];
+        this.slotSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) slotSequences.set(i, i);
+        this.mask = size - 1;
+        this.multiProducer = multiProducer;
+        this.producerWait = WaitStrategy.of(waitStrategy);
+        this.consumerWait = WaitStrategy.of(waitStrategy);
+
+        Metrics.gauge("channel", Tags.of("ring-buffer", "size"), this,
+                channel -> channel.producerSequence.get() - channel.consumerSequence.get());
+        log.info("Ring buffer channel -- size: {}, {}, wait strategy: {}", size, multiProducer ? "MPSC" : "SPSC", waitStrategy);
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    @Override
+    public void put(ConsumerRecord<byte[], byte[]> record) {
+        long position = claim();
+        int index = index(position);
+
+        //a claimed position can't be given back, wait until the consumer frees the slot
+        while (!producerWait.await(() -> slotSequences.get(index) == position || interrupted.get(), WAIT_NANOS)
+                || slotSequences.get(index) != position) {
+            throwIfInterrupted();
+        }
+
+        publish(index, position, record);
+    }
+
+    @Override
+    public void putAll(List<ConsumerRecord<byte[], byte[]>> records) {
+        for (ConsumerRecord<byte[], byte[]> record : records) {
+            put(record);
+        }
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    @Override
+    public boolean offer(ConsumerRecord<byte[], byte[]> record) {
+        long start = System.nanoTime();
+        while (true) {
+            long position = producerSequence.get();
+            int index = index(position);
+
+            if (slotSequences.get(index) == position) {
+                if (producerSequence.compareAndSet(position, position + 1)) {
+                    publish(index, position, record);
+                    return true;
+                }
+                continue; //another producer took it
+            }
+
+            long remaining = WAIT_NANOS - (System.nanoTime() - start);
+            if (remaining <= 0) return false;
+            producerWait.await(() -> slotSequences.get(index) == position, remaining);
+        }
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    @Override
+    public int offerAll(List<ConsumerRecord<byte[], byte[]>> records) {
+        throwIfInterrupted();
+        int accepted = 0;
+        while (accepted < records.size()) {
+            long position = producerSequence.get();
+            int index = index(position);
+            if (slotSequences.get(index) != position) break; //full
+
+            if (producerSequence.compareAndSet(position, position + 1)) {
+                publish(index, position, records.get(accepted));
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    @Override
+    public ConsumerRecord<byte[], byte[]> get() {
+        long position = consumerSequence.get();
+        consumerWait.await(() -> isPublished(position), WaitStrategy.NO_TIMEOUT);
+
+        ConsumerRecord<byte[], byte[]> record = consume(position);
+        producerWait.signalAll();
+        return record;
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    @Override
+    public ConsumerRecord<byte[], byte[]> pool() {
+        long position = consumerSequence.get();
+        if (!consumerWait.await(() -> isPublished(position), WAIT_NANOS)) {
+            return KafkaRecords.EMPTY_RECORD;
+        }
+
+        ConsumerRecord<byte[], byte[]> record = consume(position);
+        producerWait.signalAll();
+        return record;
+    }
+
+    @Override
+    public int drainTo(Collection<? super ConsumerRecord<byte[], byte[]>> collection, int maxRecords) {
+        return drainTo(collection, maxRecords, WaitStrategy.NO_TIMEOUT, NANOSECONDS);
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    @Override
+    public int drainTo(Collection<? super ConsumerRecord<byte[], byte[]>> collection, int maxRecords,
+                       long timeout, TimeUnit unit) {
+        long first = consumerSequence.get();
+        if (!consumerWait.await(() -> isPublished(first), unit.toNanos(timeout))) {
+            return 0;
+        }
+
+        int drained = 0;
+        long position = first;
+        while (drained < maxRecords && isPublished(position)) {
+            collection.add(consume(position));
+            position++;
+            drained++;
+        }
+
+        producerWait.signalAll();
+        return drained;
+    }
+
+    @Override
+    public void interrupt() {
+        boolean result;
+        do {
+            if (interrupted.get()) return; //avoid infinity loop when called multiple times
+            result = interrupted.compareAndSet(false, true);
+        } while (!result);
+        producerWait.signalAll();
+    }
+
+    private long claim() {
+        if (multiProducer) {
+            return producerSequence.getAndIncrement();
+        }
+
+        long position = producerSequence.get();
+        producerSequence.setRelease(position + 1);
+        return position;
+    }
+
+    private void publish(int index, long position, ConsumerRecord<byte[], byte[]> record) {
+        buffer[index] = record;
+        slotSequences.set(index, position + 1);
+        consumerWait.signalAll();
+    }
+
+    private boolean isPublished(long position) {
+        return slotSequences.get(index(position)) == position + 1;
+    }
+
+    //must be published, consumer thread only
+    @SuppressWarnings("unchecked")
+    private ConsumerRecord<byte[], byte[]> consume(long position) {
+        int index = index(position);
+        ConsumerRecord<byte[], byte[]> record = (ConsumerRecord<byte[], byte[]>) buffer[index];
+        buffer[index] = null;
+        //free the slot for the producer that wraps around to it
+        slotSequences.set(index, position + buffer.length);
+        consumerSequence.setRelease(position + 1);
+        return record;
+    }
+
+    private int index(long position) {
+        return (int) (position & mask);
+    }
+
+    private void throwIfInterrupted() throws InterruptedException {
+        if (interrupted.get()) {
+            throw new InterruptedException("Consumer has unexpectedly stopped, check the logs");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.gelerion.traffic.replay.core.channels;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * How a side of the ring buffer waits for the other one, trades CPU for handoff latency.
+ *
+ * blocking  -- parks on a condition, cheapest on CPU, a wake up costs a few microseconds
+ * yielding  -- spins a little then yields the core, good when there are spare cores
+ * busy-spin -- never gives the core up, lowest latency, burns a core per waiting thread
+ */
+public interface WaitStrategy {
+    long NO_TIMEOUT = Long.MAX_VALUE;
+
+    /**
+     * Waits until the condition holds or the timeout elapses
+     *
+     * @return the last evaluation of the condition
+     */
+    boolean await(BooleanSupplier condition, long timeoutNanos) throws InterruptedException;
+
+    /**
+     * Must be called after every change the other side might be waiting on
+     */
+    void signalAll();
+
+    static WaitStrategy of(String name) {
+        switch (name) {
+            case "blocking":
+                return new Blocking();
+            case "yielding":
+                return new Spinning(100, Thread::yield);
+            case "busy-spin":
+                return new Spinning(Integer.MAX_VALUE, Thread::onSpinWait);
+            default:
+                throw new IllegalArgumentException("Unknown wait strategy " + name);
+        }
+    }
+
+    class Blocking implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        @Override
+        public boolean await(BooleanSupplier condition, long timeoutNanos) throws InterruptedException {
+            if (condition.getAsBoolean()) return true;
+
+            long nanos = timeoutNanos;
+            lock.lockInterruptibly();
+            //the condition is re-checked after the waiter is counted, a signal can't slip in between
+            waiters.incrementAndGet();
+            try {
+                while (!condition.getAsBoolean()) {
+                    if (timeoutNanos == NO_TIMEOUT) {
+                        changed.await();
+                    } else {
+                        if (nanos <= 0) return false;
+                        nanos = changed.awaitNanos(nanos);
+                    }
+                }
+                return true;
+            } finally {
+                waiters.decrementAndGet();
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            if (waiters.get() == 0) return;
+
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    class Spinning implements WaitStrategy {
+        private final int spinTries;
+        private final Runnable backOff;
+
+        Spinning(int spinTries, Runnable backOff) {
+            this.spinTries = spinTries;
+            this.backOff = backOff;
+        }
+
+        @Override
+        public boolean await(BooleanSupplier condition, long timeoutNanos) throws InterruptedException {
+            long start = System.nanoTime();
+            int tries = 0;
+            while (!condition.getAsBoolean()) {
+                if (timeoutNanos != NO_TIMEOUT && System.nanoTime() - start >= timeoutNanos) return false;
+                if (Thread.interrupted()) throw new InterruptedException();
+
+                if (tries < spinTries) {
+                    tries++;
+                    Thread.onSpinWait();
+                } else {
+                    backOff.run();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void signalAll() {
+            //spinners re-check on their own
+        }
+    }
+}
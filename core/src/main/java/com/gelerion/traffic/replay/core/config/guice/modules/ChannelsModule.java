@@ -2,17 +2,34 @@ package com.gelerion.traffic.replay.core.config.guice.modules;
 
 import com.gelerion.traffic.replay.core.channels.AsyncChannel;
 import com.gelerion.traffic.replay.core.channels.BoundedBufferedChannel;
+import com.gelerion.traffic.replay.core.channels.RingBufferChannel;
 import com.google.inject.AbstractModule;
+import com.google.inject.Provider;
+import com.google.inject.Provides;
 import com.google.inject.Singleton;
-import com.google.inject.TypeLiteral;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.cfg4j.provider.ConfigurationProvider;
 
+@Slf4j
 @Singleton
 public class ChannelsModule extends AbstractModule {
 
-    @Override
-    protected void configure() {
-        bind(new TypeLiteral<AsyncChannel<ConsumerRecord<String, String>>>(){})
-                .to(new TypeLiteral<BoundedBufferedChannel>(){});
+    @Provides
+    @Singleton
+    AsyncChannel<ConsumerRecord<byte[], byte[]>> channel(ConfigurationProvider config,
+                                                         Provider<BoundedBufferedChannel> boundedBufferedChannel,
+                                                         Provider<RingBufferChannel> ringBufferChannel) {
+        String type = config.getProperty("channel.type", String.class);
+        log.info("Channel implementation -- {}", type);
+
+        switch (type) {
+            case BoundedBufferedChannel.NAME:
+                return boundedBufferedChannel.get();
+            case RingBufferChannel.NAME:
+                return ringBufferChannel.get();
+            default:
+                throw new RuntimeException("Unknown channel type " + type);
+        }
     }
 }
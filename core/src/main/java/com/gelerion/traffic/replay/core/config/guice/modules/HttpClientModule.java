@@ -4,6 +4,7 @@ import com.gelerion.traffic.replay.core.utils.HttpInterceptors;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 
 public class HttpClientModule extends AbstractModule {
@@ -11,7 +12,14 @@ public class HttpClientModule extends AbstractModule {
     @Provides
     @Singleton
     OkHttpClient httpClient() {
+        //OkHttpService caps the in-flight calls itself, the dispatcher must never queue on top of it
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Integer.MAX_VALUE);
+        //the limiter releases in the callback, before the dispatcher counts the call as finished
+        dispatcher.setMaxRequestsPerHost(Integer.MAX_VALUE);
+
         return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
                 .addInterceptor(HttpInterceptors.MEASURE_RESPONSE_TIME_INTERCEPTOR)
                 .build();
     }
@@ -4,17 +4,44 @@ import com.gelerion.traffic.replay.core.http.client.HttpService;
 import com.gelerion.traffic.replay.core.http.client.OkHttpService;
 import com.gelerion.traffic.replay.core.service.scheduler.ScheduleService;
 import com.gelerion.traffic.replay.core.service.scheduler.Scheduler;
+import com.gelerion.traffic.replay.core.service.scheduler.impl.HashedWheelScheduler;
 import com.gelerion.traffic.replay.core.service.scheduler.impl.JavaExecutorScheduler;
+import com.gelerion.traffic.replay.core.service.scheduler.impl.PrecisionScheduler;
 import com.google.inject.AbstractModule;
+import com.google.inject.Provider;
+import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.cfg4j.provider.ConfigurationProvider;
 
+@Slf4j
 @Singleton
 public class SchedulerModule extends AbstractModule {
 
     @Override
     protected void configure() {
-        bind(Scheduler.class).to(JavaExecutorScheduler.class);
         bind(HttpService.class).to(OkHttpService.class);
         bind(ScheduleService.class);
     }
+
+    @Provides
+    @Singleton
+    Scheduler scheduler(ConfigurationProvider config,
+                        Provider<JavaExecutorScheduler> javaExecutorScheduler,
+                        Provider<HashedWheelScheduler> hashedWheelScheduler,
+                        Provider<PrecisionScheduler> precisionScheduler) {
+        String type = config.getProperty("scheduler.type", String.class);
+        log.info("Scheduler implementation -- {}", type);
+
+        switch (type) {
+            case JavaExecutorScheduler.NAME:
+                return javaExecutorScheduler.get();
+            case HashedWheelScheduler.NAME:
+                return hashedWheelScheduler.get();
+            case PrecisionScheduler.NAME:
+                return precisionScheduler.get();
+            default:
+                throw new RuntimeException("Unknown scheduler type " + type);
+        }
+    }
 }
@@ -1,12 +1,42 @@
 package com.gelerion.traffic.replay.core.config.guice.modules;
 
 import com.gelerion.traffic.replay.core.kafka.TrafficReader;
+import com.gelerion.traffic.replay.core.source.FileTrafficSource;
+import com.gelerion.traffic.replay.core.source.SegmentTrafficSource;
+import com.gelerion.traffic.replay.core.source.TrafficSource;
 import com.google.inject.AbstractModule;
+import com.google.inject.Provider;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.cfg4j.provider.ConfigurationProvider;
 
+@Slf4j
 public class TrafficReaderModule extends AbstractModule {
 
     @Override
     protected void configure() {
         bind(TrafficReader.class);
     }
+
+    @Provides
+    @Singleton
+    TrafficSource trafficSource(ConfigurationProvider config,
+                                Provider<TrafficReader> trafficReader,
+                                Provider<FileTrafficSource> fileTrafficSource,
+                                Provider<SegmentTrafficSource> segmentTrafficSource) {
+        String type = config.getProperty("source.type", String.class);
+        log.info("Traffic source -- {}", type);
+
+        switch (type) {
+            case TrafficReader.NAME:
+                return trafficReader.get();
+            case FileTrafficSource.NAME:
+                return fileTrafficSource.get();
+            case SegmentTrafficSource.NAME:
+                return segmentTrafficSource.get();
+            default:
+                throw new RuntimeException("Unknown traffic source type " + type);
+        }
+    }
 }
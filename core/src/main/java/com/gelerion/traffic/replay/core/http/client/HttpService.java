@@ -3,5 +3,8 @@ package com.gelerion.traffic.replay.core.http.client;
 import com.gelerion.traffic.replay.api.model.EventAndRequest;
 
 public interface HttpService {
-    Runnable createTrigger(EventAndRequest eventAndRequest);
+    /**
+     * @param intendedFireTimeMillis epoch millis the request is supposed to fire at, latency is also measured from it
+     */
+    Runnable createTrigger(EventAndRequest eventAndRequest, long intendedFireTimeMillis);
 }
@@ -0,0 +1,57 @@
+package com.gelerion.traffic.replay.core.http.client;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps the number of requests in flight against a single target.
+ *
+ * Never blocks the caller, calls above the limit wait in a queue that is drained as in-flight calls complete.
+ * Keeping the queue here rather than inside the OkHttp dispatcher makes the time spent waiting visible.
+ */
+class InFlightLimiter {
+    private final Semaphore permits;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    InFlightLimiter(String target, int maxInFlight) {
+        this.permits = new Semaphore(maxInFlight);
+
+        Metrics.gauge("http", Tags.of("target", target, "limiter", "in-flight"), permits,
+                semaphore -> maxInFlight - semaphore.availablePermits());
+        Metrics.gauge("http", Tags.of("target", target, "limiter", "queued"), pendingCount, AtomicInteger::get);
+    }
+
+    /**
+     * The call must invoke {@link #release()} exactly once when it completes
+     */
+    void submit(Runnable call) {
+        pending.add(call);
+        pendingCount.incrementAndGet();
+        drain();
+    }
+
+    void release() {
+        permits.release();
+        drain();
+    }
+
+    //a permit may be released concurrently with a new submit, whoever wins the permit runs the next call
+    private void drain() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            Runnable call = pending.poll();
+            if (call == null) {
+                permits.release();
+                continue;
+            }
+
+            pendingCount.decrementAndGet();
+            call.run();
+        }
+    }
+}
@@ -9,39 +9,73 @@ import com.google.inject.Inject;
 import com.jasongoodwin.monads.Try;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.OkHttpClient;
+import okhttp3.Request;
 import okhttp3.Response;
 import org.cfg4j.provider.ConfigurationProvider;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
-
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Latency is accounted in three parts, all in nanoTime millis:
+ *
+ * queue-ms    -- from the trigger firing until the in-flight limiter lets the call through
+ * new-ms      -- service time, from the dispatcher executing the call until the response arrives, both taken by
+ *                {@link HttpInterceptors#MEASURE_RESPONSE_TIME_INTERCEPTOR}
+ * intended-ms -- from the time the request was supposed to fire until the response arrives, when the target
+ *                saturates this keeps growing while new-ms stays flat (coordinated omission)
+ */
 @Slf4j
 public class OkHttpService implements HttpService {
+    private static Timer queueTimeTimer = Metrics.timer("http", "response-time", "queue-ms");
+
     private final OkHttpClient httpClient;
+    private final ConcurrentMap<String, InFlightLimiter> limiters = new ConcurrentHashMap<>();
+    private final int maxInFlight;
     private boolean shouldLogResponseBody;
 
     @Inject
     public OkHttpService(OkHttpClient okHttpClient, ConfigurationProvider config) {
         this.httpClient = okHttpClient;
+        this.maxInFlight = config.getProperty("http.client.max-in-flight", Integer.class);
         this.shouldLogResponseBody = config.getProperty("http.service.log-response-body", Boolean.class);
     }
 
     @Override
-    public Runnable createTrigger(EventAndRequest eventAndRequest) {
+    public Runnable createTrigger(EventAndRequest eventAndRequest, long intendedFireTimeMillis) {
         return () -> {
-            long queryStartTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
-
-            httpClient.newCall(eventAndRequest.request())
-                    .enqueue(new RequestCallback(eventAndRequest.event(), queryStartTimeMs, shouldLogResponseBody));
+            long firedAtMs = NANOSECONDS.toMillis(System.nanoTime());
+            //move the intended fire time onto the nanoTime scale the response time header is on
+            long intendedStartTimeMs = firedAtMs - Math.max(0, System.currentTimeMillis() - intendedFireTimeMillis);
+
+            Request request = eventAndRequest.request();
+            InFlightLimiter limiter = limiters.computeIfAbsent(request.url().host(),
+                    host -> new InFlightLimiter(host, maxInFlight));
+
+            limiter.submit(() -> {
+                queueTimeTimer.record(NANOSECONDS.toMillis(System.nanoTime()) - firedAtMs, MILLISECONDS);
+
+                RequestCallback callback = new RequestCallback(eventAndRequest.event(), limiter,
+                        intendedStartTimeMs, shouldLogResponseBody);
+                try {
+                    httpClient.newCall(request).enqueue(callback);
+                } catch (RuntimeException e) {
+                    limiter.release();
+                    throw e;
+                }
+            });
         };
     }
 
@@ -53,26 +87,38 @@ public class OkHttpService implements HttpService {
         private static Counter responseSuccessCounter = Metrics.counter("http", "request", "success");
         private static Counter responseFailureCounter = Metrics.counter("http", "request", "failure");
         private static Timer oldResponseTimeTimer = Metrics.timer("http", "response-time", "old-ms");
-        private static Timer newResponseTimeTimer = Metrics.timer("http", "response-time", "new-ms");
+        private static Timer newResponseTimeTimer = Timer.builder("http")
+                .tags(Tags.of("response-time", "new-ms"))
+                .publishPercentiles(0.5, 0.9, 0.99, 0.999)
+                .register(Metrics.globalRegistry);
+        private static Timer intendedResponseTimeTimer = Timer.builder("http")
+                .tags(Tags.of("response-time", "intended-ms"))
+                .publishPercentiles(0.5, 0.9, 0.99, 0.999)
+                .register(Metrics.globalRegistry);
 
         private final Event event;
-        private final long queryStartTimeMs;
+        private final InFlightLimiter limiter;
+        private final long intendedStartTimeMs;
         private final boolean logResponseBody;
 
-        private RequestCallback(Event event, long queryStartTimeMs, boolean logResponseBody) {
+        private RequestCallback(Event event, InFlightLimiter limiter, long intendedStartTimeMs, boolean logResponseBody) {
             this.event = event;
-            this.queryStartTimeMs = queryStartTimeMs;
+            this.limiter = limiter;
+            this.intendedStartTimeMs = intendedStartTimeMs;
             this.logResponseBody = logResponseBody;
         }
 
         @Override
         public void onResponse(@NotNull Call call, @NotNull Response response) {
+            limiter.release();
             responseSuccessCounter.increment();
             StringBuilder logRecord = new StringBuilder();
             logRecord.append("Status: ").append(response.code()).append("\n\t");
 
-            long newResponseTimeMs = responseTimeMs(response) - queryStartTimeMs;
+            long responseTimeMs = header(response, HttpInterceptors.X_LOADER_RESPONSE_TIME);
+            long newResponseTimeMs = responseTimeMs - header(response, HttpInterceptors.X_LOADER_REQUEST_START_TIME);
             newResponseTimeTimer.record(newResponseTimeMs, MILLISECONDS);
+            intendedResponseTimeTimer.record(responseTimeMs - intendedStartTimeMs, MILLISECONDS);
             httpMetrics.reportQueryTime(newResponseTimeMs, HttpMetrics.Type.NEW);
             logRecord.append("New response time: ").append(newResponseTimeMs).append("\n\t");
 
@@ -95,12 +141,13 @@ public class OkHttpService implements HttpService {
             log.debug(logRecord.toString());
         }
 
-        private long responseTimeMs(@NotNull Response response) {
-            return Long.parseLong(requireNonNull(response.header(HttpInterceptors.X_LOADER_RESPONSE_TIME)));
+        private long header(@NotNull Response response, String name) {
+            return Long.parseLong(requireNonNull(response.header(name)));
         }
 
         @Override
         public void onFailure(@NotNull Call call, @NotNull IOException e) {
+            limiter.release();
             responseFailureCounter.increment();
             log.warn("Failed to execute query {}", event, e);
         }
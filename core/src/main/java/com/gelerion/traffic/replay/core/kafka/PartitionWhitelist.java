@@ -2,35 +2,71 @@ package com.gelerion.traffic.replay.core.kafka;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Partitions this process replays, each with the generation of its current ownership.
+ *
+ * Every time a consumer of this process takes a partition over it gets a new generation and its records are tagged
+ * with it, see {@link com.gelerion.traffic.replay.core.kafka.types.KafkaRecords#generation}. Records the previous
+ * owner left in the channel or the workers carry the old one, so they don't pass for the new owner's records.
+ */
 @Slf4j
 public enum  PartitionWhitelist {
     INSTANCE;
 
-    private final Set<Integer> whitelist;
+    //records that are not read from kafka, files and segments never change hands
+    public static final long UNTAGGED = 0;
+
+    private final ConcurrentMap<Integer, Long> whitelist;
+    private final AtomicLong generations = new AtomicLong(UNTAGGED);
 
     PartitionWhitelist() {
-        this.whitelist = ConcurrentHashMap.newKeySet();
+        this.whitelist = new ConcurrentHashMap<>();
     }
 
     public boolean contains(int partition) {
-        return whitelist.contains(partition);
+        return whitelist.containsKey(partition);
+    }
+
+    /**
+     * @return whether the partition is still owned the way it was when the record of that generation was consumed
+     */
+    public boolean contains(int partition, long generation) {
+        Long current = whitelist.get(partition);
+        return current != null && (generation == UNTAGGED || current == generation);
+    }
+
+    public long generation(int partition) {
+        return whitelist.getOrDefault(partition, UNTAGGED);
+    }
+
+    public long nextGeneration() {
+        return generations.incrementAndGet();
     }
 
     public void add(Set<Integer> assignedPartitions) {
-        whitelist.addAll(assignedPartitions);
-        log.info("Added partitions to whitelist: {}. New whitelist: {}", assignedPartitions, whitelist);
+        assignedPartitions.forEach(partition -> whitelist.put(partition, UNTAGGED));
+        log.info("Added partitions to whitelist: {}. New whitelist: {}", assignedPartitions, whitelist.keySet());
+    }
+
+    public void add(Map<Integer, Long> assignedGenerations) {
+        whitelist.putAll(assignedGenerations);
+        log.info("Added partitions to whitelist: {}. New whitelist: {}", assignedGenerations, whitelist.keySet());
     }
 
-    public void remove(Set<Integer> revokedPartitions) {
-        whitelist.removeAll(revokedPartitions);
-        log.info("Removed partitions from whitelist: {}. New whitelist: {}", revokedPartitions, whitelist);
+    //a partition another consumer has taken over in the meantime stays
+    public void remove(Map<Integer, Long> revokedGenerations) {
+        revokedGenerations.forEach(whitelist::remove);
+        log.info("Removed partitions from whitelist: {}. New whitelist: {}", revokedGenerations.keySet(), whitelist.keySet());
     }
 
     @Override
     public String toString() {
-        return whitelist.toString();
+        return whitelist.keySet().toString();
     }
 }
@@ -0,0 +1,125 @@
+package com.gelerion.traffic.replay.core.kafka;
+
+import com.gelerion.traffic.replay.core.channels.AsyncChannel;
+import com.gelerion.traffic.replay.core.kafka.types.KafkaRecords;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+
+import java.util.*;
+
+/**
+ * Records polled but not yet accepted by the channel, kept per partition.
+ *
+ * A partition with pending records is paused so poll() keeps the consumer alive in the group without fetching
+ * more of it, once its records are handed off it is resumed. Records are held back either because the channel is
+ * full or because they are beyond the lookahead horizon. Owned by a single consumer thread.
+ */
+@Slf4j
+class PendingRecords {
+    private final Map<TopicPartition, Backlog> backlogs = new HashMap<>();
+
+    /**
+     * The records are tagged with the generation their partition is owned under, the ownership can't change
+     * while the consumer thread is here
+     */
+    void add(ConsumerRecords<byte[], byte[]> records) {
+        for (TopicPartition partition : records.partitions()) {
+            List<ConsumerRecord<byte[], byte[]>> partitionRecords = records.records(partition);
+            Header generation = KafkaRecords.generationHeader(PartitionWhitelist.INSTANCE.generation(partition.partition()));
+            for (ConsumerRecord<byte[], byte[]> record : partitionRecords) {
+                record.headers().add(generation);
+            }
+            backlogs.computeIfAbsent(partition, it -> new Backlog()).addAll(partitionRecords);
+        }
+    }
+
+    boolean isEmpty() {
+        return backlogs.isEmpty();
+    }
+
+    int partitions() {
+        return backlogs.size();
+    }
+
+    /**
+     * Hands off as much as the channel accepts without blocking, then pauses the partitions that still have pending
+     * records and resumes the ones that were drained
+     *
+     * @param maxTimestamp records with a later kafka timestamp are held back, records without one are never held
+     * @return number of records handed off
+     */
+    int handOff(KafkaConsumer<?, ?> consumer, AsyncChannel<ConsumerRecord<byte[], byte[]>> channel, long maxTimestamp) {
+        int handedOff = 0;
+        Iterator<Backlog> iterator = backlogs.values().iterator();
+        while (iterator.hasNext()) {
+            Backlog backlog = iterator.next();
+            int accepted = channel.offerAll(backlog.upTo(maxTimestamp));
+            backlog.skip(accepted);
+            handedOff += accepted;
+
+            if (backlog.isEmpty()) iterator.remove();
+        }
+
+        Set<TopicPartition> drained = new HashSet<>(consumer.paused());
+        drained.removeAll(backlogs.keySet());
+        if (!drained.isEmpty()) consumer.resume(drained);
+        if (!backlogs.isEmpty()) consumer.pause(backlogs.keySet());
+
+        return handedOff;
+    }
+
+    /**
+     * Invoked from the rebalance listener, pending records of the revoked partitions are dropped and the partitions
+     * resumed. Where a partition is read from if it comes back is up to the rebalance listener, a seek here would be
+     * lost with the assignment
+     */
+    void onPartitionsRevoked(KafkaConsumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        List<TopicPartition> dropped = new ArrayList<>();
+        for (TopicPartition partition : partitions) {
+            Backlog backlog = backlogs.remove(partition);
+            if (backlog == null) continue;
+
+            log.info("Dropping {} pending records of the revoked partition {}", backlog.remaining().size(), partition);
+            dropped.add(partition);
+        }
+        if (!dropped.isEmpty()) consumer.resume(dropped);
+    }
+
+    private static class Backlog {
+        private final List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>();
+        private int next;
+
+        void addAll(List<ConsumerRecord<byte[], byte[]>> partitionRecords) {
+            if (next > 0) {
+                records.subList(0, next).clear();
+                next = 0;
+            }
+            records.addAll(partitionRecords);
+        }
+
+        List<ConsumerRecord<byte[], byte[]>> remaining() {
+            return records.subList(next, records.size());
+        }
+
+        //stops at the first record beyond the timestamp to keep the partition order
+        List<ConsumerRecord<byte[], byte[]>> upTo(long maxTimestamp) {
+            int end = next;
+            while (end < records.size() && records.get(end).timestamp() <= maxTimestamp) {
+                end++;
+            }
+            return records.subList(next, end);
+        }
+
+        void skip(int count) {
+            next += count;
+        }
+
+        boolean isEmpty() {
+            return next == records.size();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.gelerion.traffic.replay.core.kafka;
 
+import com.gelerion.traffic.replay.core.kafka.checkpoint.ReplayCheckpoints;
 import com.gelerion.traffic.replay.core.service.scheduler.ScheduleTimeCalculator;
 import com.google.common.collect.Sets;
 import com.google.common.eventbus.EventBus;
@@ -10,11 +11,13 @@ import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
 import org.apache.kafka.common.TopicPartition;
 import org.cfg4j.provider.ConfigurationProvider;
 
-import java.time.ZonedDateTime;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.OptionalLong;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toMap;
@@ -26,21 +29,29 @@ public class SeekToOffsetsListener implements ConsumerRebalanceListener {
     private final KafkaConsumer<?, ?> consumer;
     private final EventBus eventBus;
     private final boolean useTimestampSeek;
+    private final BiConsumer<KafkaConsumer<?, ?>, Collection<TopicPartition>> onRevoked;
+    private final ReplayCheckpoints checkpoints;
 
     //keep track of the partitions that we own across rebalances.  If we get
     //back the same partitions that we previously owned, we don't need to reset
     //the offsets or erase our scheduled state.
     private Set<Integer> partitionsWeOwn = new HashSet<>();
+    //the generation each of them is owned under, it is kept for as long as the partition stays with us
+    private Map<Integer, Long> generations = new HashMap<>();
     private ScheduleTimeCalculator scheduleTimeCalculator;
 
     public SeekToOffsetsListener(ConfigurationProvider config,
                                  KafkaConsumer<?, ?> consumer,
                                  EventBus eventBus,
-                                 ScheduleTimeCalculator scheduleTimeCalculator) {
+                                 ScheduleTimeCalculator scheduleTimeCalculator,
+                                 ReplayCheckpoints checkpoints,
+                                 BiConsumer<KafkaConsumer<?, ?>, Collection<TopicPartition>> onRevoked) {
         this.consumer = consumer;
         this.eventBus = eventBus;
         this.partitionWhitelist = PartitionWhitelist.INSTANCE;
         this.scheduleTimeCalculator = scheduleTimeCalculator;
+        this.checkpoints = checkpoints;
+        this.onRevoked = onRevoked;
         this.useTimestampSeek = config.getProperty("kafka.use-timestamp-seek", Boolean.class);
     }
 
@@ -63,22 +74,52 @@ public class SeekToOffsetsListener implements ConsumerRebalanceListener {
 
         moveOffsets(newTopicPartitions);
 
-        partitionWhitelist.add(assignedPartitions);
-        eventBus.post(noLongerOwnedPartitions); //cancel scheduled tasks for partitions we no longer own, see ScheduleService.onPartitionRevoked
+        //a partition taken over from another consumer gets a new generation, the records its previous owner left
+        //in the channel or the workers are not scheduled anymore
+        Map<Integer, Long> assignedGenerations = new HashMap<>();
+        for (Integer partition : assignedPartitions) {
+            assignedGenerations.put(partition, newPartitions.contains(partition)
+                    ? partitionWhitelist.nextGeneration()
+                    : generations.get(partition));
+        }
+        partitionWhitelist.add(assignedGenerations);
+        //cancel scheduled tasks for partitions we no longer own, see ScheduleService.onPartitionRevoked
+        //with several consumers in this process a partition we lost might have moved to a sibling consumer, keep its tasks
+        eventBus.post(noLongerOwnedPartitions.stream().filter(it -> !partitionWhitelist.contains(it)).collect(toSet()));
+        //a sibling consumer might have left tasks behind for the partitions we took over, they are re-read from the new offsets
+        eventBus.post(newPartitions.immutableCopy());
         partitionsWeOwn = assignedPartitions;
+        generations = assignedGenerations;
     }
 
     @Override
     public void onPartitionsRevoked(Collection<TopicPartition> topicPartitions) {
-        Set<Integer> revokedPartitions = topicPartitions.stream().map(TopicPartition::partition).collect(toSet());
-        partitionWhitelist.remove(revokedPartitions);
+        Map<Integer, Long> revokedGenerations = new HashMap<>();
+        for (TopicPartition topicPartition : topicPartitions) {
+            Long generation = generations.get(topicPartition.partition());
+            if (generation != null) revokedGenerations.put(topicPartition.partition(), generation);
+        }
+        partitionWhitelist.remove(revokedGenerations);
+        onRevoked.accept(consumer, topicPartitions);
     }
 
-    private void moveOffsets(Collection<TopicPartition> partitions) {
+    private void moveOffsets(Collection<TopicPartition> topicPartitions) {
+        //resume a previous run where it stopped, the rest are positioned as usual
+        Set<TopicPartition> partitions = new HashSet<>();
+        for (TopicPartition partition : topicPartitions) {
+            OptionalLong checkpoint = checkpoints.restoredOffset(consumer, partition);
+            if (checkpoint.isPresent()) {
+                log.info("Resuming {} from checkpoint {}", partition, checkpoint.getAsLong());
+                consumer.seek(partition, checkpoint.getAsLong());
+            } else {
+                partitions.add(partition);
+            }
+        }
+        if (partitions.isEmpty()) return;
+
         if (useTimestampSeek) {
             log.info("Seeking to offsets for timestamp");
-            long timestampToSeek = scheduleTimeCalculator.computeOriginalStartTimeForScheduleTime(ZonedDateTime.now())
-                    .toInstant().toEpochMilli();
+            long timestampToSeek = scheduleTimeCalculator.computeOriginalStartTimeMillis(System.currentTimeMillis());
 
             Map<TopicPartition, Long> timestampsToSearch = partitions.stream()
                     .collect(toMap(identity(), key -> timestampToSeek));
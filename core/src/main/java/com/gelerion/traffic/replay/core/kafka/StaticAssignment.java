@@ -0,0 +1,90 @@
+package com.gelerion.traffic.replay.core.kafka;
+
+import com.gelerion.traffic.replay.core.zk.ZkClient;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.cfg4j.provider.ConfigurationProvider;
+import org.cfg4j.provider.GenericType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Partitions this node reads when kafka.assignment.mode is static.
+ *
+ * Nodes don't join a consumer group, so adding one never triggers a rebalance and never cancels scheduled tasks
+ * on the others. The ranges come from kafka.assignment.partitions or, when set, from the zookeeper node
+ * kafka.assignment.zk-node, e.g. "0-15, 32".
+ */
+@Slf4j
+@Singleton
+public class StaticAssignment {
+    public static final String SUBSCRIBE = "subscribe";
+    public static final String STATIC = "static";
+
+    private final boolean enabled;
+    private final List<Integer> partitions;
+
+    @Inject
+    public StaticAssignment(ConfigurationProvider config, ZkClient zkClient) {
+        String mode = config.getProperty("kafka.assignment.mode", String.class);
+        if (!mode.equals(SUBSCRIBE) && !mode.equals(STATIC)) {
+            throw new IllegalArgumentException("Unknown kafka assignment mode " + mode);
+        }
+
+        this.enabled = mode.equals(STATIC);
+        if (!enabled) {
+            this.partitions = List.of();
+            return;
+        }
+
+        String zkNode = config.getProperty("kafka.assignment.zk-node", String.class);
+        List<String> ranges = zkNode.isBlank()
+                ? config.getProperty("kafka.assignment.partitions", new GenericType<List<String>>() {})
+                : Arrays.asList(zkClient.getString(zkNode).split(","));
+
+        this.partitions = parse(ranges);
+        if (partitions.isEmpty()) {
+            throw new IllegalArgumentException("Static assignment needs at least one partition");
+        }
+        log.info("Static partition assignment{} -- {}", zkNode.isBlank() ? "" : " from " + zkNode, partitions);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Splits the partitions of this node between its consumers round robin
+     */
+    public List<Integer> partitionsOf(int consumerIndex, int consumers) {
+        List<Integer> assigned = new ArrayList<>();
+        for (int i = consumerIndex; i < partitions.size(); i += consumers) {
+            assigned.add(partitions.get(i));
+        }
+        return assigned;
+    }
+
+    static List<Integer> parse(List<String> ranges) {
+        TreeSet<Integer> parsed = new TreeSet<>();
+        for (String range : ranges) {
+            String trimmed = range.trim();
+            if (trimmed.isEmpty()) continue;
+
+            int dash = trimmed.indexOf('-');
+            if (dash < 0) {
+                parsed.add(Integer.parseInt(trimmed));
+                continue;
+            }
+
+            int from = Integer.parseInt(trimmed.substring(0, dash).trim());
+            int to = Integer.parseInt(trimmed.substring(dash + 1).trim());
+            if (from > to) throw new IllegalArgumentException("Malformed partition range " + range);
+            for (int partition = from; partition <= to; partition++) parsed.add(partition);
+        }
+        return new ArrayList<>(parsed);
+    }
+}
@@ -1,57 +1,164 @@
 package com.gelerion.traffic.replay.core.kafka;
 
-import com.gelerion.traffic.replay.core.channels.BoundedBufferedChannel;
+import com.gelerion.traffic.replay.core.channels.AsyncChannel;
 import com.gelerion.traffic.replay.core.kafka.builder.KafkaConsumerProvider;
+import com.gelerion.traffic.replay.core.kafka.checkpoint.ReplayCheckpoints;
+import com.gelerion.traffic.replay.core.service.scheduler.ScheduleTimeCalculator;
+import com.gelerion.traffic.replay.core.source.TrafficSource;
 import com.gelerion.traffic.replay.core.utils.ShutdownService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.Metric;
 import org.cfg4j.provider.ConfigurationProvider;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
+/**
+ * Runs kafka.consumer-threads consumers of the same group, each on its own thread with its own rebalance listener.
+ * All of them feed the same channel, a full channel pauses the partitions instead of blocking the poll loop.
+ */
 @Slf4j
-public class TrafficReader {
+public class TrafficReader implements TrafficSource {
+    public static final String NAME = "kafka";
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+    private static final Duration BACKPRESSURE_POLL_TIMEOUT = Duration.ofMillis(10);
+
     private final DistributionSummary consumed = Metrics.summary("kafka", "consumer", "consumed"); //backed by histogram
     private final Counter produced = Metrics.counter("kafka", "consumer", "produced"); //backed by meter
 
     private final ConfigurationProvider config;
     private final KafkaConsumerProvider kafkaConsumerProvider;
-    private final BoundedBufferedChannel channel;
+    private final AsyncChannel<ConsumerRecord<byte[], byte[]>> channel;
+    private final ScheduleTimeCalculator scheduleTimeCalculator;
+    private final ReplayCheckpoints checkpoints;
+    private final StaticAssignment staticAssignment;
+    private final long lookaheadHorizonMs;
 
     @Inject
     public TrafficReader(ConfigurationProvider config,
                          KafkaConsumerProvider kafkaConsumerProvider,
-                         BoundedBufferedChannel channel) {
+                         AsyncChannel<ConsumerRecord<byte[], byte[]>> channel,
+                         ScheduleTimeCalculator scheduleTimeCalculator,
+                         ReplayCheckpoints checkpoints,
+                         StaticAssignment staticAssignment) {
         this.config = config;
         this.kafkaConsumerProvider = kafkaConsumerProvider;
         this.channel = channel;
+        this.scheduleTimeCalculator = scheduleTimeCalculator;
+        this.checkpoints = checkpoints;
+        this.staticAssignment = staticAssignment;
+        this.lookaheadHorizonMs = config.getProperty("kafka.lookahead-horizon-ms", Long.class);
     }
 
+    @SneakyThrows(InterruptedException.class)
+    @Override
     public void startProcessing() {
-        //N threads?
-        try (KafkaConsumer<String, String> consumer = kafkaConsumerProvider.subscribeAndGet()) {
+        int consumerThreads = config.getProperty("kafka.consumer-threads", Integer.class);
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("kafka-consumer-%d")
+                .build();
+
+        List<Thread> consumers = new ArrayList<>();
+        for (int i = 0; i < consumerThreads; i++) {
+            String consumerId = String.valueOf(i);
+            if (staticAssignment.isEnabled()) {
+                List<Integer> partitions = staticAssignment.partitionsOf(i, consumerThreads);
+                if (partitions.isEmpty()) continue; //more threads than partitions
+                consumers.add(threadFactory.newThread(() ->
+                        consume(consumerId, pending -> kafkaConsumerProvider.assignAndGet(consumerId, partitions))));
+            } else {
+                consumers.add(threadFactory.newThread(() ->
+                        consume(consumerId, pending -> kafkaConsumerProvider.subscribeAndGet(consumerId, (it, revoked) -> {
+                            checkpoints.commitRevoked(it, revoked);
+                            pending.onPartitionsRevoked(it, revoked);
+                        }))));
+            }
+        }
+
+        log.info("Starting {} kafka consumers", consumers.size());
+        consumers.forEach(Thread::start);
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+    }
+
+    private void consume(String consumerId, Function<PendingRecords, KafkaConsumer<byte[], byte[]>> consumerFactory) {
+        Counter polls = Metrics.counter("kafka", "consumer", consumerId, "poll", "count");
+        AtomicLong lag = Metrics.gauge("kafka", Tags.of("consumer", consumerId, "lag", "records-lag-max"), new AtomicLong());
+        AtomicInteger paused = Metrics.gauge("kafka", Tags.of("consumer", consumerId, "partitions", "paused"), new AtomicInteger());
+        PendingRecords pending = new PendingRecords();
+
+        try (KafkaConsumer<byte[], byte[]> consumer = consumerFactory.apply(pending)) {
+            ConsumerLag consumerLag = new ConsumerLag(consumer);
+
             ShutdownService.whileNotStopped(() -> {
                 //consumers must keep polling Kafka or they will be considered dead and the partitions
                 //they are consuming will be handed to another consumer in the group to continue consuming
                 //controls how long poll() will block if data is not available in the consumer buffer
-                ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(100));
+                //while the channel is full the backlogged partitions are paused, poll returns nothing for them
+                ConsumerRecords<byte[], byte[]> records = consumer.poll(pending.isEmpty() ? POLL_TIMEOUT : BACKPRESSURE_POLL_TIMEOUT);
                 consumed.record(records.count());
+                polls.increment();
+                //the consumer is not thread safe, read its metrics here rather than from the reporter thread
+                lag.set(consumerLag.recordsLagMax());
 
                 //log.info("Pooled {} records", records.count());
-                for (ConsumerRecord<String, String> record : records) {
-                    channel.put(record);
-                    produced.increment();
-                }
+                pending.add(records);
+                produced.increment(pending.handOff(consumer, channel, horizonTimestamp()));
+                paused.set(pending.partitions());
+                checkpoints.commitIfDue(consumer);
             });
         } catch (Exception e) {
-            log.error("Failed to start", e);
+            log.error("Kafka consumer {} failed", consumerId, e);
             ShutdownService.shutDown();
         }
     }
+
+    /*
+        Records are let through only while their replay time is within now + lookahead-horizon, translated back to
+        the original timeline that is the latest kafka timestamp we may hand off. Partitions that run ahead stay paused,
+        so the number of pending tasks is bound by horizon * rate rather than by max-scheduled-tasks
+     */
+    private long horizonTimestamp() {
+        if (lookaheadHorizonMs <= 0) return Long.MAX_VALUE;
+        return scheduleTimeCalculator.computeOriginalStartTimeMillis(System.currentTimeMillis() + lookaheadHorizonMs);
+    }
+
+    private static class ConsumerLag {
+        private final KafkaConsumer<?, ?> consumer;
+        private Metric recordsLagMax; //registered by the consumer lazily, on the first fetch
+
+        ConsumerLag(KafkaConsumer<?, ?> consumer) {
+            this.consumer = consumer;
+        }
+
+        long recordsLagMax() {
+            if (recordsLagMax == null) {
+                recordsLagMax = consumer.metrics().values().stream()
+                        .filter(metric -> metric.metricName().name().equals("records-lag-max"))
+                        .filter(metric -> !metric.metricName().tags().containsKey("topic")) //consumer wide, not per partition
+                        .findFirst()
+                        .orElse(null);
+                if (recordsLagMax == null) return 0;
+            }
+
+            double value = (double) recordsLagMax.metricValue();
+            return Double.isNaN(value) ? 0 : (long) value;
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package com.gelerion.traffic.replay.core.kafka.builder;
 
 import com.gelerion.traffic.replay.core.kafka.SeekToOffsetsListener;
+import com.gelerion.traffic.replay.core.kafka.checkpoint.ReplayCheckpoints;
 import com.gelerion.traffic.replay.core.service.scheduler.ScheduleTimeCalculator;
 import com.gelerion.traffic.replay.core.zk.ZkClient;
 import com.google.common.collect.ImmutableMap;
@@ -8,13 +9,17 @@ import com.google.common.eventbus.EventBus;
 import com.google.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
 import org.cfg4j.provider.ConfigurationProvider;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
 import static org.apache.kafka.clients.CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG;
 import static org.apache.kafka.clients.consumer.ConsumerConfig.*;
 
@@ -24,47 +29,82 @@ public class KafkaConsumerProvider {
     private final ZkClient zkClient;
     private final ScheduleTimeCalculator scheduleTimeCalculator;
     private final EventBus eventBus;
+    private final ReplayCheckpoints checkpoints;
 
     @Inject
     public KafkaConsumerProvider(ConfigurationProvider config,
                                  ZkClient zkClient,
                                  ScheduleTimeCalculator scheduleTimeCalculator,
-                                 EventBus eventBus) {
+                                 EventBus eventBus,
+                                 ReplayCheckpoints checkpoints) {
         this.config = config;
         this.zkClient = zkClient;
         this.scheduleTimeCalculator = scheduleTimeCalculator;
         this.eventBus = eventBus;
+        this.checkpoints = checkpoints;
     }
 
-    public KafkaConsumer<String, String> subscribeAndGet() {
+    /**
+     * @param clientId distinguishes consumers of the same group running in this process
+     * @param onRevoked invoked on the polling thread before the partitions are taken away
+     */
+    public KafkaConsumer<byte[], byte[]> subscribeAndGet(String clientId,
+                                                         BiConsumer<KafkaConsumer<?, ?>, Collection<TopicPartition>> onRevoked) {
+        String subscribeTopics = config.getProperty("kafka.topics", String.class);
+        String groupId = config.getProperty("general.test-id", String.class);
+
+        KafkaConsumer<byte[], byte[]> consumer = createConsumer(clientId);
+        var seekToOffsetsListener = new SeekToOffsetsListener(config, consumer, eventBus, scheduleTimeCalculator, checkpoints, onRevoked);
+
+        List<String> topics = Collections.singletonList(subscribeTopics);
+        log.info("Kafka consumer {} is about to subscribe to {} with group id {}", clientId, topics, groupId);
+
+        //if enable.auto.commit is set to true (which is the default) the consumer automatically triggers offset commits
+        //periodically according to the interval configured with “auto.commit.interval.ms.”
+        consumer.subscribe(topics, seekToOffsetsListener);
+        return consumer;
+    }
+
+    /**
+     * No group membership, the partitions stay with this consumer until it stops. The group id is only used
+     * for the replay checkpoints
+     */
+    public KafkaConsumer<byte[], byte[]> assignAndGet(String clientId, List<Integer> partitions) {
+        String topic = config.getProperty("kafka.topics", String.class);
+        List<TopicPartition> topicPartitions = partitions.stream()
+                .map(partition -> new TopicPartition(topic, partition))
+                .collect(toList());
+
+        KafkaConsumer<byte[], byte[]> consumer = createConsumer(clientId);
+        log.info("Kafka consumer {} is about to be assigned {}", clientId, topicPartitions);
+        consumer.assign(topicPartitions);
+
+        //positions the partitions and fills up the whitelist the same way a group assignment does, exactly once
+        new SeekToOffsetsListener(config, consumer, eventBus, scheduleTimeCalculator, checkpoints, (it, revoked) -> {})
+                .onPartitionsAssigned(topicPartitions);
+        return consumer;
+    }
+
+    private KafkaConsumer<byte[], byte[]> createConsumer(String clientId) {
         //preferable approach:
         //create kafka props out of a dynamically reloaded config file
         //Map map = config.getProperty("kafka", Map.class);
 
 //        String groupId = UUID.randomUUID().toString();
-        String subscribeTopics = config.getProperty("kafka.topics", String.class);
         String groupId = config.getProperty("general.test-id", String.class);
 
         ImmutableMap<String, Object> kafkaProps = ImmutableMap.<String, Object>builder()
                 .put(BOOTSTRAP_SERVERS_CONFIG, zkClient.getBrokerList()) //List of host:port pairs of Kafka brokers
                 .put(GROUP_ID_CONFIG, groupId)
-                .put(KEY_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringDeserializer")
-                .put(VALUE_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringDeserializer")
+                .put(CLIENT_ID_CONFIG, groupId + "-" + clientId)
+                .put(KEY_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.ByteArrayDeserializer")
+                .put(VALUE_DESERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.ByteArrayDeserializer")
                 .put(AUTO_OFFSET_RESET_CONFIG, "earliest")
                 .put(ENABLE_AUTO_COMMIT_CONFIG, false)
                 .put(MAX_POLL_INTERVAL_MS_CONFIG, (int) SECONDS.toMillis(2))
                 .build();
 
-        KafkaConsumer<String, String> consumer = new KafkaConsumer<>(kafkaProps);
-        var seekToOffsetsListener = new SeekToOffsetsListener(config, consumer, eventBus, scheduleTimeCalculator);
-
-        List<String> topics = Collections.singletonList(subscribeTopics);
-        log.info("Kafka is about to subscribe to {} with group id {}", topics, groupId);
-
-        //if enable.auto.commit is set to true (which is the default) the consumer automatically triggers offset commits
-        //periodically according to the interval configured with “auto.commit.interval.ms.”
-        consumer.subscribe(topics, seekToOffsetsListener);
-        return consumer;
+        return new KafkaConsumer<>(kafkaProps);
     }
 
 }
@@ -0,0 +1,39 @@
+package com.gelerion.traffic.replay.core.kafka.checkpoint;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Offsets of a partition whose triggers have not all fired yet.
+ * Records are tracked by a single thread in offset order, they complete from any thread.
+ */
+class PartitionProgress {
+    private final ConcurrentSkipListMap<Long, RecordProgress> inFlight = new ConcurrentSkipListMap<>();
+    private volatile long nextOffset = -1;
+
+    RecordProgress track(long offset) {
+        RecordProgress record = new RecordProgress(this, offset);
+        inFlight.put(offset, record);
+        nextOffset = offset + 1;
+        return record;
+    }
+
+    void completed(long offset) {
+        inFlight.remove(offset);
+    }
+
+    /**
+     * @return the offset to resume from, every record below it has fired. -1 if nothing was tracked yet
+     */
+    long committableOffset() {
+        //read before the in-flight records, a record tracked meanwhile can only be at or above it
+        long next = nextOffset;
+        Map.Entry<Long, RecordProgress> oldest = inFlight.firstEntry();
+        return oldest == null ? next : Math.min(oldest.getKey(), next);
+    }
+
+    long lag() {
+        long committable = committableOffset();
+        return committable < 0 ? 0 : nextOffset - committable;
+    }
+}
@@ -0,0 +1,59 @@
+package com.gelerion.traffic.replay.core.kafka.checkpoint;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the triggers of a single kafka record that are yet to fire.
+ * Starts with a hold released once all the events of the record are scheduled, so a record doesn't complete
+ * while its events are still being produced.
+ */
+public class RecordProgress {
+    //checkpoints disabled, nothing is counted so there is no shared counter on the hot path
+    static final RecordProgress NOOP = new RecordProgress(null, -1) {
+        @Override
+        public void retain() {
+        }
+
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public Runnable releaseAfter(Runnable trigger) {
+            return trigger;
+        }
+    };
+
+    private final PartitionProgress partition;
+    private final long offset;
+    private final AtomicInteger pending = new AtomicInteger(1);
+
+    RecordProgress(PartitionProgress partition, long offset) {
+        this.partition = partition;
+        this.offset = offset;
+    }
+
+    public void retain() {
+        pending.incrementAndGet();
+    }
+
+    public void release() {
+        if (pending.decrementAndGet() == 0 && partition != null) {
+            partition.completed(offset);
+        }
+    }
+
+    /**
+     * Releases once the trigger ran, successful or not. A cancelled trigger never releases
+     */
+    public Runnable releaseAfter(Runnable trigger) {
+        retain();
+        return () -> {
+            try {
+                trigger.run();
+            } finally {
+                release();
+            }
+        };
+    }
+}
@@ -0,0 +1,222 @@
+package com.gelerion.traffic.replay.core.kafka.checkpoint;
+
+import com.gelerion.traffic.replay.core.utils.ShutdownService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.cfg4j.provider.ConfigurationProvider;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Replay progress, per partition the offset below which every trigger has fired.
+ *
+ * none  -- nothing is tracked, partitions are positioned by kafka.use-timestamp-seek as before
+ * kafka -- committed to the consumer group, on the polling thread
+ * file  -- written to checkpoint.file by a background thread
+ *
+ * Both are written every checkpoint.interval-ms. A restarted replay resumes from the checkpoint, only the triggers
+ * of the records that were in flight when it stopped might fire again.
+ */
+@Slf4j
+@Singleton
+public class ReplayCheckpoints {
+    public static final String NONE = "none";
+    public static final String KAFKA = "kafka";
+    public static final String FILE = "file";
+
+    private final ConcurrentMap<Integer, PartitionProgress> partitions = new ConcurrentHashMap<>();
+    //the last checkpoint of every partition, including the ones we no longer own. File mode only
+    private final ConcurrentMap<Integer, Long> checkpoints = new ConcurrentHashMap<>();
+    private final String mode;
+    private final long intervalMs;
+    private final Path file;
+    private long lastCommitMs; //kafka mode, polling thread only
+
+    @Inject
+    public ReplayCheckpoints(ConfigurationProvider config) {
+        this.mode = config.getProperty("checkpoint.mode", String.class);
+        this.intervalMs = config.getProperty("checkpoint.interval-ms", Long.class);
+        this.file = Paths.get(config.getProperty("checkpoint.file", String.class));
+
+        switch (mode) {
+            case NONE:
+            case KAFKA:
+                break;
+            case FILE:
+                checkpoints.putAll(readFile());
+                startFileWriter();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown checkpoint mode " + mode);
+        }
+        log.info("Replay checkpoints -- {}", mode);
+    }
+
+    public boolean isEnabled() {
+        return !mode.equals(NONE);
+    }
+
+    /**
+     * Must be called in offset order per partition
+     */
+    public RecordProgress track(int partition, long offset) {
+        if (!isEnabled()) return RecordProgress.NOOP;
+        return partitions.computeIfAbsent(partition, this::newPartitionProgress).track(offset);
+    }
+
+    /**
+     * The partition is re-read from its checkpoint, whatever was in flight doesn't count anymore
+     */
+    public void reset(int partition) {
+        partitions.remove(partition);
+    }
+
+    /**
+     * @return the offset to resume the partition from, if there is a checkpoint for it
+     */
+    public OptionalLong restoredOffset(KafkaConsumer<?, ?> consumer, TopicPartition partition) {
+        switch (mode) {
+            case KAFKA:
+                OffsetAndMetadata committed = consumer.committed(partition);
+                return committed == null ? OptionalLong.empty() : OptionalLong.of(committed.offset());
+            case FILE:
+                Long checkpoint = checkpoints.get(partition.partition());
+                return checkpoint == null ? OptionalLong.empty() : OptionalLong.of(checkpoint);
+            default:
+                return OptionalLong.empty();
+        }
+    }
+
+    /**
+     * Kafka mode, called on every poll loop iteration of the consumer
+     */
+    public void commitIfDue(KafkaConsumer<?, ?> consumer) {
+        if (!mode.equals(KAFKA)) return;
+
+        long now = System.currentTimeMillis();
+        if (now - lastCommitMs < intervalMs) return;
+        lastCommitMs = now;
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = committableOffsets(consumer.assignment());
+        if (!offsets.isEmpty()) {
+            consumer.commitAsync(offsets, (committed, e) -> {
+                if (e != null) log.warn("Failed to commit replay checkpoints {}", committed, e);
+            });
+        }
+    }
+
+    /**
+     * Kafka mode, called from the rebalance listener before the partitions are taken away
+     */
+    public void commitRevoked(KafkaConsumer<?, ?> consumer, Collection<TopicPartition> revoked) {
+        if (!mode.equals(KAFKA)) return;
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = committableOffsets(revoked);
+        if (offsets.isEmpty()) return;
+        try {
+            consumer.commitSync(offsets);
+        } catch (Exception e) {
+            log.warn("Failed to commit replay checkpoints of the revoked partitions {}", offsets, e);
+        }
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> committableOffsets(Collection<TopicPartition> topicPartitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition topicPartition : topicPartitions) {
+            PartitionProgress progress = partitions.get(topicPartition.partition());
+            if (progress == null) continue;
+
+            long offset = progress.committableOffset();
+            if (offset >= 0) offsets.put(topicPartition, new OffsetAndMetadata(offset));
+        }
+        return offsets;
+    }
+
+    private PartitionProgress newPartitionProgress(int partition) {
+        PartitionProgress progress = new PartitionProgress();
+        //records read but not fully fired, what a restart would replay again
+        Metrics.gauge("checkpoint", Tags.of("partition", String.valueOf(partition), "lag", "records"), this,
+                checkpoints -> {
+                    PartitionProgress current = checkpoints.partitions.get(partition);
+                    return current == null ? 0 : current.lag();
+                });
+        return progress;
+    }
+
+    private void startFileWriter() {
+        new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("checkpoint-writer-thread")
+                .setUncaughtExceptionHandler((thread, ex) -> log.error("Checkpoint writer has stopped", ex))
+                .build()
+                .newThread(() -> {
+                    ShutdownService.whileNotStopped(() -> {
+                        sleep(intervalMs);
+                        writeFile();
+                    });
+                    writeFile(); //final checkpoint on the way out
+                })
+                .start();
+    }
+
+    @SneakyThrows(IOException.class)
+    private Map<Integer, Long> readFile() {
+        if (!Files.exists(file)) {
+            log.info("No checkpoint file at {}, starting from scratch", file);
+            return Collections.emptyMap();
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+
+        Map<Integer, Long> restored = new HashMap<>();
+        properties.forEach((partition, offset) ->
+                restored.put(Integer.parseInt((String) partition), Long.parseLong((String) offset)));
+        log.info("Restored checkpoints from {}: {}", file, restored);
+        return restored;
+    }
+
+    @SneakyThrows(IOException.class)
+    private void writeFile() {
+        partitions.forEach((partition, progress) -> {
+            long offset = progress.committableOffset();
+            if (offset >= 0) checkpoints.put(partition, offset);
+        });
+
+        Properties properties = new Properties();
+        checkpoints.forEach((partition, offset) -> properties.setProperty(String.valueOf(partition), String.valueOf(offset)));
+
+        //write aside and swap, a crash mid-write must not corrupt the previous checkpoint
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp)) {
+            properties.store(writer, "partition=offset to resume from");
+        }
+        Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    private static void sleep(long millis) {
+        Thread.sleep(millis);
+    }
+}
@@ -1,8 +1,28 @@
 package com.gelerion.traffic.replay.core.kafka.types;
 
+import com.gelerion.traffic.replay.core.kafka.PartitionWhitelist;
+import com.google.common.primitives.Longs;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
 
 public class KafkaRecords {
-    public static final ConsumerRecord<String, String> EMPTY_RECORD =
-            new ConsumerRecord<>("", -1, -1L, "", "");
+    public static final ConsumerRecord<byte[], byte[]> EMPTY_RECORD =
+            new ConsumerRecord<>("", -1, -1L, new byte[0], new byte[0]);
+
+    private static final String GENERATION_HEADER = "traffic-replay-generation";
+
+    //one header serves all the records a consumer polls of a partition
+    public static Header generationHeader(long generation) {
+        return new RecordHeader(GENERATION_HEADER, Longs.toByteArray(generation));
+    }
+
+    /**
+     * @return the partition ownership the record was consumed under, {@link PartitionWhitelist#UNTAGGED}
+     * for records that are not read from kafka
+     */
+    public static long generation(ConsumerRecord<?, ?> record) {
+        Header header = record.headers().lastHeader(GENERATION_HEADER);
+        return header == null ? PartitionWhitelist.UNTAGGED : Longs.fromByteArray(header.value());
+    }
 }
@@ -0,0 +1,44 @@
+package com.gelerion.traffic.replay.core.segment;
+
+import com.gelerion.traffic.replay.api.CompilableRecordProcessor;
+import com.gelerion.traffic.replay.api.RecordProcessor;
+import com.gelerion.traffic.replay.api.model.EventAndRequest;
+import com.google.common.primitives.Longs;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.record.TimestampType;
+
+import java.util.stream.Stream;
+
+/**
+ * Compiled records travel the channel as regular records: the kafka timestamp is the event time,
+ * the key is the response time and the value is the payload
+ */
+public final class CompiledRecords {
+    public static final String TOPIC = "segment";
+
+    private CompiledRecords() {
+    }
+
+    static ConsumerRecord<byte[], byte[]> of(int partition, long offset, SegmentReader reader) {
+        byte[] payload = reader.payload();
+        return new ConsumerRecord<>(TOPIC, partition, offset, reader.timestamp(), TimestampType.CREATE_TIME,
+                (long) ConsumerRecord.NULL_CHECKSUM, Long.BYTES, payload.length,
+                Longs.toByteArray(reader.responseTime()), payload);
+    }
+
+    public static CompilableRecordProcessor<?> compilable(RecordProcessor<?> processor) {
+        if (!(processor instanceof CompilableRecordProcessor)) {
+            throw new IllegalArgumentException(processor.getClass().getSimpleName() + " doesn't support replay segments");
+        }
+        return (CompilableRecordProcessor<?>) processor;
+    }
+
+    public static Stream<EventAndRequest> process(CompilableRecordProcessor<?> processor,
+                                                  ConsumerRecord<byte[], byte[]> record,
+                                                  boolean deferRequests) {
+        long responseTime = Longs.fromByteArray(record.key());
+        return deferRequests
+                ? processor.processCompiledDeferred(record.timestamp(), responseTime, record.value())
+                : processor.processCompiled(record.timestamp(), responseTime, record.value());
+    }
+}
@@ -0,0 +1,130 @@
+package com.gelerion.traffic.replay.core.segment;
+
+import com.gelerion.traffic.replay.api.CompilableRecordProcessor;
+import com.gelerion.traffic.replay.api.RecordProcessor;
+import com.gelerion.traffic.replay.api.event.Event;
+import com.gelerion.traffic.replay.api.event.Timestamped;
+import com.gelerion.traffic.replay.core.channels.AsyncChannel;
+import com.gelerion.traffic.replay.core.config.guice.Initializer;
+import com.gelerion.traffic.replay.core.source.SegmentTrafficSource;
+import com.gelerion.traffic.replay.core.source.TrafficSource;
+import com.gelerion.traffic.replay.core.utils.ShutdownService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.cfg4j.provider.ConfigurationProvider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.gelerion.traffic.replay.core.segment.SegmentFormat.NO_RESPONSE_TIME;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Reads the configured source.type (kafka or file) once, parses every record and writes what passes the
+ * processor filters into source.segment.dir, a segment per partition per max-bytes. Stops once the source
+ * has produced nothing for source.segment.compile-idle-ms. The resulting segments are replayed with
+ * source.type segment.
+ */
+@Slf4j
+public class SegmentCompiler {
+    private final AsyncChannel<ConsumerRecord<byte[], byte[]>> channel;
+    private final Provider<TrafficSource> trafficSource;
+    private final CompilableRecordProcessor<?> recordProcessor;
+    private final Path dir;
+    private final long maxBytes;
+    private final int indexInterval;
+    private final long idleMs;
+    private final int batchSize;
+    private final String sourceType;
+
+    @Inject
+    public SegmentCompiler(ConfigurationProvider config,
+                           AsyncChannel<ConsumerRecord<byte[], byte[]>> channel,
+                           Provider<TrafficSource> trafficSource,
+                           RecordProcessor<? extends Timestamped> recordProcessor) {
+        this.channel = channel;
+        this.trafficSource = trafficSource;
+        this.recordProcessor = CompiledRecords.compilable(recordProcessor);
+        this.dir = Paths.get(config.getProperty("source.segment.dir", String.class));
+        this.maxBytes = config.getProperty("source.segment.max-bytes", Long.class);
+        this.indexInterval = config.getProperty("source.segment.index-interval", Integer.class);
+        this.idleMs = config.getProperty("source.segment.compile-idle-ms", Long.class);
+        this.batchSize = config.getProperty("channel.batch-size", Integer.class);
+        this.sourceType = config.getProperty("source.type", String.class);
+    }
+
+    public static void main(String[] args) {
+        Runtime.getRuntime().addShutdownHook(new Thread(ShutdownService::shutDown));
+        Initializer.makeInjector().getInstance(SegmentCompiler.class).compile();
+    }
+
+    @SneakyThrows(IOException.class)
+    public void compile() {
+        if (sourceType.equals(SegmentTrafficSource.NAME)) {
+            throw new IllegalArgumentException("Segments are compiled from the kafka or the file source");
+        }
+        Files.createDirectories(dir);
+        log.info("Compiling the {} source into {}", sourceType, dir);
+
+        new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("compiler-source-thread")
+                .build()
+                .newThread(() -> trafficSource.get().startProcessing())
+                .start();
+
+        Map<Integer, SegmentWriter> writers = new HashMap<>();
+        List<ConsumerRecord<byte[], byte[]>> batch = new ArrayList<>(batchSize);
+        long written = 0;
+        long skipped = 0;
+        try {
+            while (!ShutdownService.isCancelled()) {
+                if (channel.drainTo(batch, batchSize, idleMs, MILLISECONDS) == 0) {
+                    log.info("Nothing came in for {}ms, the source is exhausted", idleMs);
+                    break;
+                }
+
+                for (ConsumerRecord<byte[], byte[]> record : batch) {
+                    SegmentWriter writer = writers.computeIfAbsent(record.partition(),
+                            partition -> new SegmentWriter(dir, partition, maxBytes, indexInterval));
+                    if (compile(recordProcessor, record.value(), writer)) {
+                        written++;
+                    } else {
+                        skipped++;
+                    }
+                }
+                batch.clear();
+            }
+        } finally {
+            for (SegmentWriter writer : writers.values()) {
+                writer.close();
+            }
+            //stops the source, a consumer blocked on the full channel gives up too
+            ShutdownService.shutDown();
+            channel.interrupt();
+        }
+        log.info("Compiled {} records of {} partitions, {} didn't pass the filters", written, writers.size(), skipped);
+    }
+
+    private static <E extends Event> boolean compile(CompilableRecordProcessor<E> processor, byte[] record,
+                                                     SegmentWriter writer) throws IOException {
+        if (!processor.prefilter(record, 0, record.length)) return false;
+
+        E event = processor.parse(record, 0, record.length);
+        if (!processor.filter(event)) return false;
+
+        writer.write(event.timestamp().toEpochMilli(), event.responseTimeMs().orElse(NO_RESPONSE_TIME),
+                processor.payload(event));
+        return true;
+    }
+}
@@ -0,0 +1,87 @@
+package com.gelerion.traffic.replay.core.segment;
+
+import com.gelerion.traffic.replay.core.channels.AsyncChannel;
+import com.gelerion.traffic.replay.core.utils.ShutdownService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.SneakyThrows;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Streams the segments of a single partition into the channel, channel.batch-size records at a time
+ */
+public class SegmentFeed {
+    private final Counter read = Metrics.counter("source", "segment", "read");
+    private final Counter skipped = Metrics.counter("source", "segment", "before-seek");
+
+    private final int partition;
+    private final List<Path> segments;
+    private final int batchSize;
+
+    public SegmentFeed(int partition, List<Path> segments, int batchSize) {
+        this.partition = partition;
+        this.segments = segments;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return number of records fed
+     */
+    public long feed(AsyncChannel<ConsumerRecord<byte[], byte[]>> channel, long fromTimestamp) throws IOException {
+        List<ConsumerRecord<byte[], byte[]>> batch = new ArrayList<>(batchSize);
+        long offset = 0; //records of the partition, counted across its segments
+
+        for (Path segment : segments) {
+            SegmentReader reader = new SegmentReader(segment);
+            if (reader.maxTimestamp() < fromTimestamp) continue;
+
+            reader.seek(fromTimestamp);
+            while (reader.next() && !ShutdownService.isCancelled()) {
+                if (reader.timestamp() < fromTimestamp) {
+                    skipped.increment();
+                    continue;
+                }
+
+                batch.add(CompiledRecords.of(partition, offset++, reader));
+                if (batch.size() >= batchSize) {
+                    flush(channel, batch);
+                }
+            }
+        }
+
+        flush(channel, batch);
+        return offset;
+    }
+
+    private void flush(AsyncChannel<ConsumerRecord<byte[], byte[]>> channel, List<ConsumerRecord<byte[], byte[]>> batch) {
+        if (batch.isEmpty()) return;
+
+        channel.putAll(batch);
+        read.increment(batch.size());
+        batch.clear();
+    }
+
+    /**
+     * Segment files of the directory grouped by partition, in the order they were written
+     */
+    @SneakyThrows(IOException.class)
+    public static Map<Integer, List<Path>> segmentsByPartition(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(SegmentFormat::isSegment)
+                    .sorted()
+                    .collect(groupingBy(SegmentFormat::partitionOf, TreeMap::new, toList()));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.gelerion.traffic.replay.core.segment;
+
+import java.nio.file.Path;
+
+/**
+ * Layout of a replay segment, all numbers are big endian:
+ *
+ *   header   -- int magic, int version
+ *   record   -- long timestamp (epoch ms), long response time (ms, -1 if unknown), int payload length, payload
+ *   index    -- long max timestamp before the entry, long position of the entry; one entry every index-interval records
+ *   trailer  -- long max timestamp of the segment, long index position, int index entries, int magic
+ *
+ * Records keep the order of the source, so an index entry carries the highest timestamp of everything before it
+ * rather than its own. That keeps the index sorted even when the records are not, a seek skips only what is
+ * certainly earlier than the requested time.
+ */
+final class SegmentFormat {
+    static final int MAGIC = 0x54525347; //TRSG
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 20;
+    static final int INDEX_ENTRY_SIZE = 16;
+    static final int TRAILER_SIZE = 24;
+    static final long NO_RESPONSE_TIME = -1;
+    //a segment is mapped as a whole
+    static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    static final String EXTENSION = ".seg";
+
+    private SegmentFormat() {
+    }
+
+    static String fileName(int partition, int segment) {
+        return String.format("%05d-%05d%s", partition, segment, EXTENSION);
+    }
+
+    static boolean isSegment(Path file) {
+        return file.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    static int partitionOf(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.indexOf('-')));
+    }
+}
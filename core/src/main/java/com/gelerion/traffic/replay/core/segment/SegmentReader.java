@@ -0,0 +1,111 @@
+package com.gelerion.traffic.replay.core.segment;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static com.gelerion.traffic.replay.core.segment.SegmentFormat.*;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Cursor over a memory mapped segment. Not thread safe
+ *
+ *   reader.seek(timestamp);
+ *   while (reader.next()) { reader.timestamp(); reader.payload(); }
+ */
+public class SegmentReader {
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final long maxTimestamp;
+    private final int indexPosition;
+    private final int indexEntries;
+
+    private int position = HEADER_SIZE; //of the next record
+    private long timestamp;
+    private long responseTime;
+    private int payloadPosition;
+    private int payloadLength;
+
+    public SegmentReader(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            this.buffer = channel.map(READ_ONLY, 0, channel.size());
+        }
+
+        int trailer = buffer.limit() - TRAILER_SIZE;
+        if (buffer.limit() < HEADER_SIZE + TRAILER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(trailer + 20) != MAGIC) {
+            throw new IllegalStateException(file + " is not a complete replay segment");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Unsupported version " + buffer.getInt(4) + " of " + file);
+        }
+
+        this.maxTimestamp = buffer.getLong(trailer);
+        this.indexPosition = (int) buffer.getLong(trailer + 8);
+        this.indexEntries = buffer.getInt(trailer + 16);
+    }
+
+    public long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * Positions the cursor at the latest index entry with nothing at or after the timestamp before it,
+     * records earlier than the timestamp might still follow and are up to the caller to skip
+     */
+    public void seek(long timestampMillis) {
+        if (maxTimestamp < timestampMillis) {
+            position = indexPosition; //nothing to read
+            return;
+        }
+
+        //max timestamps before the entries never decrease, the first entry always qualifies
+        int low = 0;
+        int high = indexEntries - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (indexEntry(middle) < timestampMillis) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        position = indexEntries == 0 ? HEADER_SIZE : (int) buffer.getLong(indexPosition + low * INDEX_ENTRY_SIZE + 8);
+    }
+
+    public boolean next() {
+        if (position >= indexPosition) return false;
+
+        timestamp = buffer.getLong(position);
+        responseTime = buffer.getLong(position + 8);
+        payloadLength = buffer.getInt(position + 16);
+        payloadPosition = position + RECORD_HEADER_SIZE;
+        position = payloadPosition + payloadLength;
+        return true;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public long responseTime() {
+        return responseTime;
+    }
+
+    public byte[] payload() {
+        byte[] payload = new byte[payloadLength];
+        buffer.duplicate().position(payloadPosition).get(payload);
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+
+    private long indexEntry(int entry) {
+        return buffer.getLong(indexPosition + entry * INDEX_ENTRY_SIZE);
+    }
+}
@@ -0,0 +1,118 @@
+package com.gelerion.traffic.replay.core.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.gelerion.traffic.replay.core.segment.SegmentFormat.*;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+/**
+ * Writes the records of a single partition, rolls over to a new segment once max-bytes is reached.
+ * A segment is written aside and moved in place when complete, readers never see a partial one
+ */
+@Slf4j
+public class SegmentWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path dir;
+    private final int partition;
+    private final long maxBytes;
+    private final int indexInterval;
+
+    private int segment;
+    private Path file;
+    private DataOutputStream out;
+    private long position;
+    private long records;
+    private long maxTimestamp;
+    private final List<long[]> index = new ArrayList<>();
+
+    public SegmentWriter(Path dir, int partition, long maxBytes, int indexInterval) {
+        if (maxBytes > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Segments are memory mapped, max-bytes must not exceed " + MAX_SEGMENT_SIZE);
+        }
+        this.dir = dir;
+        this.partition = partition;
+        this.maxBytes = maxBytes;
+        this.indexInterval = indexInterval;
+    }
+
+    public void write(long timestampMillis, long responseTimeMs, ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+        long recordSize = RECORD_HEADER_SIZE + length;
+        if (out != null && position + recordSize + indexSize(records + 1) + TRAILER_SIZE > maxBytes) {
+            finish();
+        }
+        if (out == null) start();
+
+        if (records % indexInterval == 0) {
+            index.add(new long[]{maxTimestamp, position});
+        }
+
+        out.writeLong(timestampMillis);
+        out.writeLong(responseTimeMs);
+        out.writeInt(length);
+        if (payload.hasArray()) {
+            out.write(payload.array(), payload.arrayOffset() + payload.position(), length);
+        } else {
+            byte[] bytes = new byte[length];
+            payload.duplicate().get(bytes);
+            out.write(bytes);
+        }
+
+        position += recordSize;
+        records++;
+        maxTimestamp = Math.max(maxTimestamp, timestampMillis);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) finish();
+    }
+
+    private void start() throws IOException {
+        file = dir.resolve(fileName(partition, segment++));
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary(file)), BUFFER_SIZE));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        position = HEADER_SIZE;
+        records = 0;
+        maxTimestamp = Long.MIN_VALUE;
+        index.clear();
+    }
+
+    private void finish() throws IOException {
+        long indexPosition = position;
+        for (long[] entry : index) {
+            out.writeLong(entry[0]);
+            out.writeLong(entry[1]);
+        }
+
+        out.writeLong(maxTimestamp);
+        out.writeLong(indexPosition);
+        out.writeInt(index.size());
+        out.writeInt(MAGIC);
+        out.close();
+        out = null;
+
+        Files.move(temporary(file), file, ATOMIC_MOVE);
+        log.info("Wrote segment {}, {} records", file, records);
+    }
+
+    private long indexSize(long records) {
+        return ((records + indexInterval - 1) / indexInterval) * INDEX_ENTRY_SIZE;
+    }
+
+    private static Path temporary(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+}
@@ -0,0 +1,106 @@
+package com.gelerion.traffic.replay.core.service.scheduler;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.cfg4j.provider.ConfigurationProvider;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides what happens to an event whose fire time has already passed (consumer hiccup, rebalance, slow start).
+ *
+ * drop             -- skip it, the replayed volume will be lower than the recorded one
+ * fire-immediately -- fire it right away, a big backlog turns into a thundering herd
+ * catch-up         -- late events are paced at most catch-up.max-rate per second, the backlog that can't be
+ *                     fired within catch-up.window-ms is dropped
+ *
+ * Events from before query-cutoff-time are never replayed, whatever the policy.
+ */
+@Slf4j
+@Singleton
+public class LateEventPolicy {
+    public static final String DROP = "drop";
+    public static final String FIRE_IMMEDIATELY = "fire-immediately";
+    public static final String CATCH_UP = "catch-up";
+    //the event is not replayed
+    public static final long DROPPED = Long.MIN_VALUE;
+
+    private final DistributionSummary latenessHistogram = Metrics.summary("scheduling", "time", "lateness-ms");
+    private final Counter droppedMeter                  = Metrics.counter("scheduling", "late", "dropped");
+    private final Counter firedImmediatelyMeter         = Metrics.counter("scheduling", "late", "fired-immediately");
+    private final Counter caughtUpMeter                 = Metrics.counter("scheduling", "late", "caught-up");
+    private final Counter catchUpOverflowMeter          = Metrics.counter("scheduling", "late", "catch-up-overflow");
+
+    private final String policy;
+    private final long windowNanos;
+    private final long slotNanos;
+    //the earliest time the next late event may fire, shared by all the late events to enforce the rate
+    private final AtomicLong nextSlotNanos = new AtomicLong(Long.MIN_VALUE);
+
+    @Inject
+    public LateEventPolicy(ConfigurationProvider config) {
+        this(config.getProperty("scheduler.late-events.policy", String.class),
+                config.getProperty("scheduler.late-events.catch-up.window-ms", Long.class),
+                config.getProperty("scheduler.late-events.catch-up.max-rate", Double.class));
+    }
+
+    public LateEventPolicy(String policy, long windowMs, double maxRatePerSecond) {
+        if (!policy.equals(DROP) && !policy.equals(FIRE_IMMEDIATELY) && !policy.equals(CATCH_UP)) {
+            throw new IllegalArgumentException("Unknown late events policy: " + policy);
+        }
+        if (policy.equals(CATCH_UP) && maxRatePerSecond <= 0) {
+            throw new IllegalArgumentException("Catch-up rate must be positive, got " + maxRatePerSecond);
+        }
+
+        this.policy = policy;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.slotNanos = policy.equals(CATCH_UP) ? (long) (TimeUnit.SECONDS.toNanos(1) / maxRatePerSecond) : 0;
+
+        log.info("Late events policy -- {}", policy.equals(CATCH_UP)
+                ? policy + " at most " + maxRatePerSecond + "/s within " + windowMs + "ms"
+                : policy);
+    }
+
+    /**
+     * @param fireTimeMillis epoch millis the event is due at, see {@link ScheduleTimeCalculator#compute(long)}
+     * @return epoch millis to fire the event at, {@link #DROPPED} if it is not replayed
+     */
+    public long reschedule(long fireTimeMillis, long nowMillis) {
+        if (fireTimeMillis == ScheduleTimeCalculator.BEFORE_QUERY_CUTOFF) return DROPPED;
+        if (fireTimeMillis >= nowMillis) return fireTimeMillis;
+
+        latenessHistogram.record(nowMillis - fireTimeMillis);
+        switch (policy) {
+            case FIRE_IMMEDIATELY:
+                firedImmediatelyMeter.increment();
+                return nowMillis;
+            case CATCH_UP:
+                return catchUp(nowMillis);
+            default:
+                droppedMeter.increment();
+                return DROPPED;
+        }
+    }
+
+    private long catchUp(long nowMillis) {
+        long now = System.nanoTime();
+        long slot;
+        long current;
+        do {
+            current = nextSlotNanos.get();
+            slot = Math.max(now, current);
+            if (slot - now > windowNanos) {
+                catchUpOverflowMeter.increment();
+                return DROPPED;
+            }
+        } while (!nextSlotNanos.compareAndSet(current, slot + slotNanos));
+
+        caughtUpMeter.increment();
+        return nowMillis + TimeUnit.NANOSECONDS.toMillis(slot - now);
+    }
+}
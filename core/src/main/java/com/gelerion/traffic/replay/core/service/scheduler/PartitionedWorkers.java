@@ -0,0 +1,78 @@
+package com.gelerion.traffic.replay.core.service.scheduler;
+
+import com.gelerion.traffic.replay.core.utils.ShutdownService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * A pool of single-threaded workers, records are sharded by partition so the order within a partition is preserved.
+ * Workers hand their records to the handler up to batch-size at a time.
+ * With zero workers records are handled inline on the submitting thread, a submitted batch at once.
+ */
+@Slf4j
+public class PartitionedWorkers<T> {
+    private final List<BlockingQueue<T>> queues = new ArrayList<>();
+    private final Consumer<List<T>> handler;
+
+    public PartitionedWorkers(String name, int workers, int queueCapacity, int batchSize, Consumer<List<T>> handler,
+                              Thread.UncaughtExceptionHandler exceptionHandler) {
+        this.handler = handler;
+
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat(name + "-%d")
+                .setUncaughtExceptionHandler(exceptionHandler)
+                .build();
+
+        for (int i = 0; i < workers; i++) {
+            BlockingQueue<T> queue = new ArrayBlockingQueue<>(queueCapacity);
+            Counter processed = Metrics.counter("scheduling.worker", "worker", String.valueOf(i), "status", "processed");
+            Metrics.gauge("scheduling.worker", Tags.of("worker", String.valueOf(i), "queue", "depth"), queue, Collection::size);
+
+            queues.add(queue);
+            List<T> batch = new ArrayList<>(batchSize);
+            threadFactory.newThread(() -> ShutdownService.whileNotStopped(() -> {
+                batch.add(take(queue));
+                queue.drainTo(batch, batchSize - 1);
+                handler.accept(batch);
+                processed.increment(batch.size());
+                batch.clear();
+            })).start();
+        }
+
+        log.info("Processing workers -- {}", workers == 0 ? "inline" : workers);
+    }
+
+    /**
+     * Blocks while the worker owning a partition is full
+     */
+    @SneakyThrows(InterruptedException.class)
+    public void submitAll(List<T> records, ToIntFunction<T> partitionOf) {
+        if (queues.isEmpty()) {
+            handler.accept(records);
+            return;
+        }
+
+        for (T record : records) {
+            queues.get(Math.floorMod(partitionOf.applyAsInt(record), queues.size())).put(record);
+        }
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    private static <T> T take(BlockingQueue<T> queue) {
+        return queue.take();
+    }
+}
@@ -0,0 +1,170 @@
+package com.gelerion.traffic.replay.core.service.scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Piecewise time warp between the original (recorded) timeline and the replay timeline.
+ *
+ * The profile is a list of steps laid out on the replay timeline, each step either holds a speedup factor
+ * or ramps it linearly over its duration:
+ *
+ *   "30m 1x->8x"  -- ramp from 1x to 8x during the first 30 minutes of the replay
+ *   "1h 8x"       -- hold 8x for an hour
+ *   "12x"         -- hold 12x from now on, only allowed as the last step
+ *
+ * The last rate is held forever once the steps run out. Replay offsets are relative to scheduling-start-time,
+ * original offsets are relative to query-cutoff-time.
+ *
+ * Original time is the integral of the rate over replay time, since every rate is positive the mapping is strictly
+ * monotonic and both directions are exact inverses (up to a millisecond rounding), which keeps timestamp seeks correct.
+ */
+public class RateProfile {
+    private static final Pattern STEP = Pattern.compile(
+            "^\\s*(?:(\\d+)\\s*(ms|s|m|h)\\s+)?(\\d+(?:\\.\\d+)?)x(?:\\s*->\\s*(\\d+(?:\\.\\d+)?)x)?\\s*$");
+
+    //segment i starts at replayStarts[i] / originalStarts[i], its rate is startRates[i] + slopes[i] * elapsed-replay-ms
+    private final double[] replayStarts;
+    private final double[] originalStarts;
+    private final double[] startRates;
+    private final double[] slopes;
+
+    private RateProfile(List<Step> steps) {
+        int segments = steps.size();
+        this.replayStarts = new double[segments];
+        this.originalStarts = new double[segments];
+        this.startRates = new double[segments];
+        this.slopes = new double[segments];
+
+        double replayStart = 0;
+        double originalStart = 0;
+        for (int i = 0; i < segments; i++) {
+            Step step = steps.get(i);
+            replayStarts[i] = replayStart;
+            originalStarts[i] = originalStart;
+            startRates[i] = step.fromRate;
+            slopes[i] = step.isOpen() ? 0 : (step.toRate - step.fromRate) / step.durationMs;
+
+            if (!step.isOpen()) {
+                replayStart += step.durationMs;
+                originalStart += step.durationMs * (step.fromRate + step.toRate) / 2;
+            }
+        }
+    }
+
+    public static RateProfile constant(double speedupFactor) {
+        return new RateProfile(List.of(Step.open(speedupFactor)));
+    }
+
+    public static RateProfile parse(List<String> steps, double defaultSpeedupFactor) {
+        List<Step> parsed = new ArrayList<>();
+        for (String step : steps) {
+            if (step.isBlank()) continue;
+            if (!parsed.isEmpty() && parsed.get(parsed.size() - 1).isOpen()) {
+                throw new IllegalArgumentException("Only the last rate profile step may omit the duration: " + steps);
+            }
+            parsed.add(Step.parse(step));
+        }
+
+        if (parsed.isEmpty()) return constant(defaultSpeedupFactor);
+
+        Step last = parsed.get(parsed.size() - 1);
+        if (!last.isOpen()) parsed.add(Step.open(last.toRate));
+        return new RateProfile(parsed);
+    }
+
+    /**
+     * @param originalOffsetMillis millis since query-cutoff-time
+     * @return millis since scheduling-start-time
+     */
+    public long toReplayOffset(long originalOffsetMillis) {
+        int i = segmentOf(originalStarts, originalOffsetMillis);
+        double original = originalOffsetMillis - originalStarts[i];
+        double rate = startRates[i];
+
+        //solves original = rate * t + slope * t^2 / 2 for t, in the form that is stable when the slope is 0
+        double elapsed = original < 0
+                ? original / rate
+                : 2 * original / (rate + Math.sqrt(rate * rate + 2 * slopes[i] * original));
+        return (long) (replayStarts[i] + elapsed);
+    }
+
+    /**
+     * @param replayOffsetMillis millis since scheduling-start-time
+     * @return millis since query-cutoff-time
+     */
+    public long toOriginalOffset(long replayOffsetMillis) {
+        int i = segmentOf(replayStarts, replayOffsetMillis);
+        double elapsed = replayOffsetMillis - replayStarts[i];
+        double original = elapsed < 0
+                ? startRates[i] * elapsed
+                : startRates[i] * elapsed + slopes[i] * elapsed * elapsed / 2;
+        return Math.round(originalStarts[i] + original);
+    }
+
+    public double rateAt(long replayOffsetMillis) {
+        int i = segmentOf(replayStarts, replayOffsetMillis);
+        return startRates[i] + slopes[i] * Math.max(0, replayOffsetMillis - replayStarts[i]);
+    }
+
+    //index of the last segment starting at or before the offset
+    private static int segmentOf(double[] starts, double offset) {
+        int index = Arrays.binarySearch(starts, offset);
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+
+    private static class Step {
+        final long durationMs; //-1 stands for open-ended
+        final double fromRate;
+        final double toRate;
+
+        Step(long durationMs, double fromRate, double toRate) {
+            if (fromRate <= 0 || toRate <= 0) {
+                throw new IllegalArgumentException("Speedup factor must be positive, got " + fromRate + " -> " + toRate);
+            }
+            this.durationMs = durationMs;
+            this.fromRate = fromRate;
+            this.toRate = toRate;
+        }
+
+        static Step open(double rate) {
+            return new Step(-1, rate, rate);
+        }
+
+        static Step parse(String step) {
+            Matcher matcher = STEP.matcher(step);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Malformed rate profile step '" + step + "', " +
+                        "expected '<duration> <rate>x', '<duration> <from>x-><to>x' or '<rate>x'");
+            }
+
+            double fromRate = Double.parseDouble(matcher.group(3));
+            double toRate = matcher.group(4) == null ? fromRate : Double.parseDouble(matcher.group(4));
+            if (matcher.group(1) == null) {
+                if (toRate != fromRate) throw new IllegalArgumentException("A ramp needs a duration: " + step);
+                return open(fromRate);
+            }
+
+            long durationMs = unit(matcher.group(2)).toMillis(Long.parseLong(matcher.group(1)));
+            if (durationMs <= 0) throw new IllegalArgumentException("Step duration must be positive: " + step);
+            return new Step(durationMs, fromRate, toRate);
+        }
+
+        boolean isOpen() {
+            return durationMs < 0;
+        }
+
+        private static TimeUnit unit(String unit) {
+            switch (unit) {
+                case "ms": return TimeUnit.MILLISECONDS;
+                case "s":  return TimeUnit.SECONDS;
+                case "m":  return TimeUnit.MINUTES;
+                default:   return TimeUnit.HOURS;
+            }
+        }
+    }
+}
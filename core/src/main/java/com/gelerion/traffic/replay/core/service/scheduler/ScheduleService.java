@@ -1,26 +1,29 @@
 package com.gelerion.traffic.replay.core.service.scheduler;
 
+import com.gelerion.traffic.replay.api.CompilableRecordProcessor;
 import com.gelerion.traffic.replay.api.RecordProcessor;
 import com.gelerion.traffic.replay.api.event.Event;
 import com.gelerion.traffic.replay.api.event.Timestamped;
 import com.gelerion.traffic.replay.api.model.EventAndRequest;
+import com.gelerion.traffic.replay.api.model.ProcessedBatch;
 import com.gelerion.traffic.replay.core.channels.AsyncChannel;
 import com.gelerion.traffic.replay.core.http.client.HttpService;
-import com.gelerion.traffic.replay.core.service.scheduler.model.ScheduleDelay;
 import com.gelerion.traffic.replay.core.utils.ShutdownService;
 import com.gelerion.traffic.replay.core.kafka.PartitionWhitelist;
-import com.gelerion.traffic.replay.core.service.scheduler.impl.NoopScheduledFuture;
+import com.gelerion.traffic.replay.core.kafka.checkpoint.RecordProgress;
+import com.gelerion.traffic.replay.core.kafka.checkpoint.ReplayCheckpoints;
+import com.gelerion.traffic.replay.core.kafka.types.KafkaRecords;
+import com.gelerion.traffic.replay.core.segment.CompiledRecords;
+import com.gelerion.traffic.replay.core.service.scheduler.model.ScheduledTask;
 import com.gelerion.traffic.replay.core.service.scheduler.model.TriggerDecorator;
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.gelerion.traffic.replay.core.source.SegmentTrafficSource;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
-import lombok.SneakyThrows;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.cfg4j.provider.ConfigurationProvider;
@@ -35,6 +38,7 @@ import java.util.*;
 import java.util.concurrent.*;
 
 import static java.time.temporal.ChronoUnit.MILLIS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * Scheduling
@@ -53,131 +57,270 @@ import static java.time.temporal.ChronoUnit.MILLIS;
 @Slf4j
 @Singleton
 public class ScheduleService {
+    private static final long MERGE_POLL_TIMEOUT_MS = 100;
+
     private final Counter skippedNegativeMeter  = Metrics.counter("scheduling", "status", "negative-delay");
     private final Counter scheduledMeter        = Metrics.counter("scheduling", "status", "scheduled");
     private final Counter skippedWhiteListMeter = Metrics.counter("scheduling", "status", "not-on-whitelist");
+    private final Counter prefilterHitMeter     = Metrics.counter("scheduling", "prefilter", "hit");
+    private final Counter prefilterMissMeter    = Metrics.counter("scheduling", "prefilter", "miss");
 
-    private final AsyncChannel<ConsumerRecord<String, String>> kafkaConsumerChannel;
+    private final AsyncChannel<ConsumerRecord<byte[], byte[]>> kafkaConsumerChannel;
     private final RecordProcessor<? extends Timestamped> recordProcessor;
+    private final CompilableRecordProcessor<?> compiledRecordProcessor; //null unless replaying segments
     private final PartitionWhitelist partitionWhitelist;
     private final HttpService httpService;
-    private final Multimap<Integer, ScheduledFuture<?>> scheduledTasks;
-    private final int maxScheduledTasks;
+    private final ScheduledTaskRegistry scheduledTasks;
+    private final boolean deferRequests;
+    private final int channelBatchSize;
+    private final PartitionedWorkers<ConsumerRecord<byte[], byte[]>> processingWorkers;
+    private final TimeOrderedMerge<TrackedEvent> timeOrderedMerge; //null when the merge is disabled
+    private final ReplayCheckpoints checkpoints;
+    private final ThreadLocal<BatchScratch> batchScratch; //per processing thread, reused across batches
+    private final List<ConsumerRecord<byte[], byte[]>> whitelisted = new ArrayList<>(); //scheduling thread only
 
     private Scheduler scheduler;
     private ScheduleTimeCalculator scheduleTimeCalculator;
+    private LateEventPolicy lateEventPolicy;
 
     private final ExecutorService schedulerServiceExecutor;
 
     @Inject
     public ScheduleService(ConfigurationProvider config,
-                           AsyncChannel<ConsumerRecord<String, String>> kafkaConsumerChannel,
+                           AsyncChannel<ConsumerRecord<byte[], byte[]>> kafkaConsumerChannel,
                            RecordProcessor<? extends Timestamped> recordProcessor,
                            HttpService httpService,
                            Scheduler scheduler,
-                           ScheduleTimeCalculator scheduleTimeCalculator) {
+                           ScheduleTimeCalculator scheduleTimeCalculator,
+                           LateEventPolicy lateEventPolicy,
+                           ReplayCheckpoints checkpoints) {
         this.kafkaConsumerChannel = kafkaConsumerChannel;
         this.recordProcessor = recordProcessor;
+        this.compiledRecordProcessor = config.getProperty("source.type", String.class).equals(SegmentTrafficSource.NAME)
+                ? CompiledRecords.compilable(recordProcessor)
+                : null;
         this.httpService = httpService;
         this.scheduler = scheduler;
         this.partitionWhitelist = PartitionWhitelist.INSTANCE;
-        this.scheduledTasks = Multimaps.synchronizedListMultimap(ArrayListMultimap.create());
+        this.scheduledTasks = new ScheduledTaskRegistry(
+                new SchedulingPermits(config.getProperty("scheduler.max-scheduled-tasks", Integer.class)));
         this.scheduleTimeCalculator = scheduleTimeCalculator;
-        this.maxScheduledTasks = config.getProperty("scheduler.max-scheduled-tasks", Integer.class);
+        this.lateEventPolicy = lateEventPolicy;
+        this.checkpoints = checkpoints;
+        this.deferRequests = config.getProperty("scheduler.defer-requests", Boolean.class);
+        this.channelBatchSize = config.getProperty("channel.batch-size", Integer.class);
+
+        this.timeOrderedMerge = config.getProperty("scheduler.merge.enabled", Boolean.class)
+                ? new TimeOrderedMerge<>(config.getProperty("scheduler.merge.max-skew-ms", Long.class),
+                        config.getProperty("scheduler.merge.idle-ms", Long.class),
+                        config.getProperty("scheduler.merge.capacity", Integer.class))
+                : null;
 
         schedulerServiceExecutor = createSchedulerThread(kafkaConsumerChannel);
-        createBackgroundFiredTasksRipperThread();
+        //parsing and request building are the expensive part, spread them while keeping the per-partition order
+        batchScratch = ThreadLocal.withInitial(() -> new BatchScratch(channelBatchSize, deferRequests));
+        processingWorkers = new PartitionedWorkers<>("processing-worker",
+                config.getProperty("scheduler.processing.workers", Integer.class),
+                config.getProperty("scheduler.processing.queue-capacity", Integer.class),
+                channelBatchSize,
+                this::processRecords,
+                shutdownOnError(kafkaConsumerChannel));
     }
 
     public void startScheduling() {
-        schedulerServiceExecutor.execute(() ->
-                ShutdownService.whileNotStopped(() -> {
-                    //potentially infinity loop here...
-                    while (!hasRoomInScheduleQueue()) {
-                        sleep();
-                    }
-
-                    var kafkaRecord = kafkaConsumerChannel.get();
-
-                    if (!partitionWhitelist.contains(kafkaRecord.partition())) {
-                        log.info("Not executing the request because its kafka partition: {} is not in the whitelist: {}",
-                                kafkaRecord.partition(), partitionWhitelist);
-                        skippedWhiteListMeter.increment();
-                        return;
-                    }
-
-                    recordProcessor.process(kafkaRecord.value())
-                            .map(this::scheduleEvent)
-                            .forEach(scheduledTask -> scheduledTasks.put(kafkaRecord.partition(), scheduledTask));
-
-                    scheduledMeter.increment();
-                })
-        );
+        schedulerServiceExecutor.execute(() -> {
+            List<ConsumerRecord<byte[], byte[]>> batch = new ArrayList<>(channelBatchSize);
+
+            ShutdownService.whileNotStopped(() -> {
+                if (timeOrderedMerge == null) {
+                    kafkaConsumerChannel.drainTo(batch, channelBatchSize);
+                    processingWorkers.submitAll(whitelisted(batch), ConsumerRecord::partition);
+                } else {
+                    //wake up periodically, idle partitions must not keep the buffered events forever
+                    kafkaConsumerChannel.drainTo(batch, channelBatchSize, MERGE_POLL_TIMEOUT_MS, MILLISECONDS);
+                    merge(batch);
+                }
+                batch.clear();
+            });
+        });
     }
 
-    private ScheduledFuture<?> scheduleEvent(EventAndRequest eventAndRequest) {
-        Event event = eventAndRequest.event();
+    //the merge needs the event time, so records are processed on this thread and the processing workers are bypassed
+    private void merge(List<ConsumerRecord<byte[], byte[]>> batch) {
+        processBatch(whitelisted(batch), (kafkaRecord, eventAndRequest, progress) -> {
+            progress.retain(); //released once the event leaves the merge
+            timeOrderedMerge.add(kafkaRecord.partition(), eventAndRequest.event().timestamp().toEpochMilli(),
+                    TrackedEvent.of(eventAndRequest, progress, KafkaRecords.generation(kafkaRecord)));
+        });
 
-        ScheduleDelay scheduleDelay = scheduleTimeCalculator.compute(event.timestamp());
-        if (scheduleDelay.hasNegativeDelay()) {
-            skippedNegativeMeter.increment();
-            return new NoopScheduledFuture<>();
+        //the partition might have been revoked or taken over by another consumer while its events were buffered
+        timeOrderedMerge.emit((partition, trackedEvent) -> {
+            if (partitionWhitelist.contains(partition, trackedEvent.getGeneration())) {
+                scheduleEvent(partition, trackedEvent.getGeneration(), trackedEvent.getEventAndRequest(),
+                        trackedEvent.getProgress());
+            }
+            trackedEvent.getProgress().release();
+        });
+    }
+
+    //the list is reused, valid until the next call
+    private List<ConsumerRecord<byte[], byte[]>> whitelisted(List<ConsumerRecord<byte[], byte[]>> batch) {
+        whitelisted.clear();
+        for (ConsumerRecord<byte[], byte[]> kafkaRecord : batch) {
+            if (isWhitelisted(kafkaRecord)) whitelisted.add(kafkaRecord);
         }
+        return whitelisted;
+    }
 
-        Runnable trigger = httpService.createTrigger(eventAndRequest);
+    private boolean isWhitelisted(ConsumerRecord<byte[], byte[]> kafkaRecord) {
+        if (partitionWhitelist.contains(kafkaRecord.partition(), KafkaRecords.generation(kafkaRecord))) return true;
 
-        TriggerDecorator decorator = TriggerDecorator.of(event, scheduleDelay);
-        Runnable decoratedTrigger = decorator.logException(decorator.measureAccuracy(trigger));
+        log.info("Not executing the request because its kafka partition: {} is not in the whitelist: {} " +
+                "or has been taken over by another consumer", kafkaRecord.partition(), partitionWhitelist);
+        skippedWhiteListMeter.increment();
+        return false;
+    }
 
-        return scheduler.schedule(decoratedTrigger, scheduleDelay);
+    private void processRecords(List<ConsumerRecord<byte[], byte[]>> kafkaRecords) {
+        processBatch(kafkaRecords, (kafkaRecord, eventAndRequest, progress) ->
+                scheduleEvent(kafkaRecord.partition(), KafkaRecords.generation(kafkaRecord), eventAndRequest, progress));
+    }
+
+    /*
+        The records that pass the prefilter go through the processor at once. Every record is tracked before and
+        released after its events are handled, so a record doesn't complete while its events are still being produced
+     */
+    private void processBatch(List<ConsumerRecord<byte[], byte[]>> kafkaRecords, ProcessedEventHandler handler) {
+        if (kafkaRecords.isEmpty()) return;
+
+        BatchScratch scratch = batchScratch.get();
+        for (ConsumerRecord<byte[], byte[]> kafkaRecord : kafkaRecords) {
+            RecordProgress progress = checkpoints.track(kafkaRecord.partition(), kafkaRecord.offset());
+            byte[] record = kafkaRecord.value();
+            if (!recordProcessor.prefilter(record, 0, record.length)) {
+                prefilterMissMeter.increment();
+                progress.release();
+                continue;
+            }
+
+            prefilterHitMeter.increment();
+            scratch.kafkaRecords.add(kafkaRecord);
+            scratch.progress.add(progress);
+            scratch.records.add(record);
+        }
+
+        ProcessedBatch processed = scratch.processed;
+        if (compiledRecordProcessor != null) {
+            for (int i = 0; i < scratch.kafkaRecords.size(); i++) {
+                int sourceIndex = i;
+                CompiledRecords.process(compiledRecordProcessor, scratch.kafkaRecords.get(i), deferRequests)
+                        .forEach(eventAndRequest -> processed.add(sourceIndex, eventAndRequest));
+            }
+        } else {
+            //deferred requests keep only the parsed event in the pending set, the request is built at fire time
+            recordProcessor.processBatch(scratch.records, processed);
+        }
+
+        for (int i = 0; i < processed.size(); i++) {
+            int sourceIndex = processed.sourceIndex(i);
+            handler.handle(scratch.kafkaRecords.get(sourceIndex), processed.result(i), scratch.progress.get(sourceIndex));
+        }
+        scratch.progress.forEach(RecordProgress::release);
+        scheduledMeter.increment(scratch.kafkaRecords.size());
+        scratch.clear();
+    }
+
+    private void scheduleEvent(int partition, long generation, EventAndRequest eventAndRequest, RecordProgress progress) {
+        Event event = eventAndRequest.event();
+
+        //blocks until a previously scheduled task fires or gets cancelled, the delay is computed only after the wait
+        ScheduledTask task = scheduledTasks.admit(partition);
+        //revoked or taken over by another consumer while waiting for admission, the revocation might have swept
+        //the registry before the task was in it
+        if (!partitionWhitelist.contains(partition, generation)) {
+            task.cancel();
+            return;
+        }
+
+        //primitive epoch millis all the way to the scheduler, nothing is allocated for the timing of an event
+        long nowMillis = System.currentTimeMillis();
+        long intendedFireTimeMillis = scheduleTimeCalculator.compute(event.timestamp());
+        long fireTimeMillis = lateEventPolicy.reschedule(intendedFireTimeMillis, nowMillis);
+        if (fireTimeMillis == LateEventPolicy.DROPPED) {
+            skippedNegativeMeter.increment();
+            task.cancel(); //returns the permit
+            return;
+        }
+
+        //latency is measured from the recorded fire time, a late event moved by the policy still shows its lateness
+        Runnable trigger = httpService.createTrigger(eventAndRequest, intendedFireTimeMillis);
+        TriggerDecorator decorator = TriggerDecorator.of(event, fireTimeMillis);
+        Runnable decoratedTrigger = task.completeOnFire(
+                progress.releaseAfter(decorator.logException(decorator.measureAccuracy(trigger))));
+        task.scheduledAs(scheduler.schedule(decoratedTrigger, fireTimeMillis - nowMillis));
     }
 
     @SuppressWarnings("all")
     @Subscribe
     public void onPartitionRevoked(Set<Integer> revokedPartitions) {
-        //should be executed in the thread that invokes execute()
-        //it's safe as we use synchronized map
+        //executed in the kafka consumer thread, the registry is safe for concurrent use
         revokedPartitions.forEach(partition -> {
-            Collection<ScheduledFuture<?>> tasks = scheduledTasks.get(partition);
-            if (tasks.size() > 0) log.info("Cancelling {} tasks from partition: {}", tasks.size(), partition);
-            tasks.forEach(task -> task.cancel(true));
+            int cancelled = scheduledTasks.cancel(partition);
+            if (cancelled > 0) log.info("Cancelled {} tasks from partition: {}", cancelled, partition);
+            checkpoints.reset(partition);
         });
     }
 
-    private void removeFiredTasks() {
-        scheduledTasks.values().removeIf(Future::isDone);
+    @FunctionalInterface
+    private interface ProcessedEventHandler {
+        void handle(ConsumerRecord<byte[], byte[]> kafkaRecord, EventAndRequest eventAndRequest, RecordProgress progress);
     }
 
-    @SneakyThrows
-    private void sleep() {
-        Thread.sleep(1000);
-    }
+    private static class BatchScratch {
+        final List<ConsumerRecord<byte[], byte[]>> kafkaRecords; //the ones that passed the prefilter
+        final List<byte[]> records;
+        final List<RecordProgress> progress;
+        final ProcessedBatch processed;
+
+        BatchScratch(int batchSize, boolean deferRequests) {
+            this.kafkaRecords = new ArrayList<>(batchSize);
+            this.records = new ArrayList<>(batchSize);
+            this.progress = new ArrayList<>(batchSize);
+            this.processed = new ProcessedBatch(batchSize, deferRequests);
+        }
 
-    private boolean hasRoomInScheduleQueue() {
-        return scheduler.scheduledTasks() <= maxScheduledTasks;
+        void clear() {
+            kafkaRecords.clear();
+            records.clear();
+            progress.clear();
+            processed.clear();
+        }
     }
 
-    private void createBackgroundFiredTasksRipperThread() {
-        Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
-                .setDaemon(true)
-                .setNameFormat("fired-task-ripper-thread")
-                .build())
-                .scheduleAtFixedRate(this::removeFiredTasks, 20, 20, TimeUnit.SECONDS);
+    @Value(staticConstructor = "of")
+    private static class TrackedEvent {
+        EventAndRequest eventAndRequest;
+        RecordProgress progress;
+        long generation;
     }
 
     @NotNull
-    private ExecutorService createSchedulerThread(AsyncChannel<ConsumerRecord<String, String>> kafkaConsumerChannel) {
+    private ExecutorService createSchedulerThread(AsyncChannel<ConsumerRecord<byte[], byte[]>> kafkaConsumerChannel) {
         return Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
                 .setDaemon(true)
                 .setNameFormat("schedule-service-thread")
-                .setUncaughtExceptionHandler((thread, ex) -> {
-                    log.error("Unexpected error - {} - shutting down", thread, ex);
-                    kafkaConsumerChannel.interrupt(); //notify consumer side is dead
-                    ShutdownService.shutDown();
-                })
+                .setUncaughtExceptionHandler(shutdownOnError(kafkaConsumerChannel))
                 .build());
     }
 
+    private static Thread.UncaughtExceptionHandler shutdownOnError(AsyncChannel<?> kafkaConsumerChannel) {
+        return (thread, ex) -> {
+            log.error("Unexpected error - {} - shutting down", thread, ex);
+            kafkaConsumerChannel.interrupt(); //notify consumer side is dead
+            ShutdownService.shutDown();
+        };
+    }
+
     public static void main(String[] args) throws ParseException {
         SimpleDateFormat ft = new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ss");
         ft.setTimeZone(TimeZone.getTimeZone("UTC"));
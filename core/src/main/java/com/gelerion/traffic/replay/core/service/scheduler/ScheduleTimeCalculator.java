@@ -1,38 +1,48 @@
 package com.gelerion.traffic.replay.core.service.scheduler;
 
-import com.gelerion.traffic.replay.core.service.scheduler.model.ScheduleDelay;
 import com.google.inject.Inject;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
 import lombok.extern.slf4j.Slf4j;
 import org.cfg4j.provider.ConfigurationProvider;
+import org.cfg4j.provider.GenericType;
 
-import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
-
-import static java.time.temporal.ChronoUnit.MILLIS;
+import java.util.List;
 
 @Slf4j
 public class ScheduleTimeCalculator {
-    private static final ScheduleDelay NEGATIVE_DELAY = ScheduleDelay.builder()
-            .schedulingDelay(Duration.ofMillis(-1))
-            .build();
+    //the event happened before query-cutoff-time, it is never replayed
+    public static final long BEFORE_QUERY_CUTOFF = Long.MIN_VALUE;
 
     private final DistributionSummary schedulingDelayHistogram = Metrics.summary("scheduling", "time", "delay-ms");
     private final DistributionSummary relativeTimeHistogram    = Metrics.summary("scheduling", "time", "relative");
     private final Counter skippedTooEarlyMeter                 = Metrics.counter("scheduling", "status", "too-early");
 
-    private long speedupFactor;
-    private ZonedDateTime queryCutOffTime;
-    private ZonedDateTime schedulingStartTime;
+    //hot path, keep everything in epoch millis to avoid allocating java.time objects per event
+    private final RateProfile rateProfile;
+    private final long queryCutOffTimeMillis;
+    private final long schedulingStartTimeMillis;
 
     @Inject
     public ScheduleTimeCalculator(ConfigurationProvider config) {
-        this.speedupFactor = config.getProperty("scheduler.speedup-factor", Long.class);
-        this.queryCutOffTime = ZonedDateTime.parse(config.getProperty("scheduler.query-cutoff-time", String.class));
-        this.schedulingStartTime = ZonedDateTime.parse(config.getProperty("scheduler.scheduling-start-time", String.class));
+        this(RateProfile.parse(
+                config.getProperty("scheduler.rate-profile", new GenericType<List<String>>() {}),
+                config.getProperty("scheduler.speedup-factor", Double.class)),
+                ZonedDateTime.parse(config.getProperty("scheduler.query-cutoff-time", String.class)).toInstant(),
+                ZonedDateTime.parse(config.getProperty("scheduler.scheduling-start-time", String.class)).toInstant());
+    }
+
+    public ScheduleTimeCalculator(RateProfile rateProfile, Instant queryCutOffTime, Instant schedulingStartTime) {
+        this.rateProfile = rateProfile;
+        this.queryCutOffTimeMillis = queryCutOffTime.toEpochMilli();
+        this.schedulingStartTimeMillis = schedulingStartTime.toEpochMilli();
+
+        Metrics.gauge("scheduling", Tags.of("rate", "speedup-factor"), this,
+                calculator -> calculator.rateProfile.rateAt(System.currentTimeMillis() - calculator.schedulingStartTimeMillis));
     }
 
      /*
@@ -54,35 +64,41 @@ public class ScheduleTimeCalculator {
         schedulingStartTime.plus(1H-05M-7S)
 
         The actual time when event will be fired is 2019-10-29T01:05:07.036Z
+
+        With a rate profile the division is replaced by RateProfile.toReplayOffset, which integrates the changing
+        speedup factor instead of applying a single one
      */
-     public ScheduleDelay compute(Instant originalStartTime) {
-         if (queryCutOffTime.toInstant().isAfter(originalStartTime)) {
-             skippedTooEarlyMeter.increment();
-             return NEGATIVE_DELAY;
-         }
-
-        Duration relativeStartTime = Duration.ofMillis(
-                MILLIS.between(queryCutOffTime.toInstant(), originalStartTime) / speedupFactor
-        );
-
-        ZonedDateTime absoluteStartTime = schedulingStartTime.plus(relativeStartTime);
-
-        // The java scheduler only accepts a delay from now, so we need to turn
-        // absolute start time into a delay from now in order to schedule t"he job
-        Duration schedulingDelay = Duration.between(Instant.now(), absoluteStartTime.toInstant());
-
-        log.trace("original-start-time: {}\n\t" +
-                "relative-start-time: {}\n\t" +
-                "absolute-start-time: {}\n\t" +
-                "scheduling-delay: {}", originalStartTime, relativeStartTime, absoluteStartTime, schedulingDelay);
-
-        relativeTimeHistogram.record(relativeStartTime.toMillis());
-        schedulingDelayHistogram.record(schedulingDelay.toMillis());
-
-        return ScheduleDelay.builder()
-                .triggerFireTime(absoluteStartTime)
-                .schedulingDelay(schedulingDelay)
-                .build();
+    public long compute(Instant originalStartTime) {
+        return compute(originalStartTime.toEpochMilli());
+    }
+
+    /**
+     * @return epoch millis the event is due to fire at, {@link #BEFORE_QUERY_CUTOFF} if it is never replayed
+     */
+    public long compute(long originalStartTimeMillis) {
+        if (originalStartTimeMillis < queryCutOffTimeMillis) {
+            skippedTooEarlyMeter.increment();
+            return BEFORE_QUERY_CUTOFF;
+        }
+
+        long relativeStartTimeMillis = rateProfile.toReplayOffset(originalStartTimeMillis - queryCutOffTimeMillis);
+        long absoluteStartTimeMillis = schedulingStartTimeMillis + relativeStartTimeMillis;
+
+        //for the metrics only, the caller turns the absolute start time into a delay once it is about to schedule
+        long schedulingDelayMillis = absoluteStartTimeMillis - System.currentTimeMillis();
+
+        if (log.isTraceEnabled()) {
+            log.trace("original-start-time: {}\n\t" +
+                    "relative-start-time: {}ms\n\t" +
+                    "absolute-start-time: {}\n\t" +
+                    "scheduling-delay: {}ms", Instant.ofEpochMilli(originalStartTimeMillis), relativeStartTimeMillis,
+                    Instant.ofEpochMilli(absoluteStartTimeMillis), schedulingDelayMillis);
+        }
+
+        relativeTimeHistogram.record(relativeStartTimeMillis);
+        schedulingDelayHistogram.record(schedulingDelayMillis);
+
+        return absoluteStartTimeMillis;
     }
 
     /*
@@ -94,7 +110,7 @@ public class ScheduleTimeCalculator {
         query cutoff time is     2019-10-28T00:00:00.000Z
         speedup factor is        2
 
-        Duration.between(scheduleTime, schedulingStartTime) is 2H-25M
+        Duration.between(schedulingStartTime, scheduleTime) is 2H-25M
         That means the query was scheduled for execution in ~2 hours relatively to the scheduling start time
 
         To get the original duration we multiply the difference by speedup factor
@@ -105,12 +121,8 @@ public class ScheduleTimeCalculator {
 
         The original start time was 2019-10-28T04:50:00.000Z
      */
-    public ZonedDateTime computeOriginalStartTimeForScheduleTime(ZonedDateTime scheduleTime) {
-        Duration durationSinceStartTime = Duration.ofMillis(
-                MILLIS.between(scheduleTime, schedulingStartTime) * speedupFactor
-        );
-
-        return queryCutOffTime.plus(durationSinceStartTime);
+    public long computeOriginalStartTimeMillis(long scheduleTimeMillis) {
+        return queryCutOffTimeMillis + rateProfile.toOriginalOffset(scheduleTimeMillis - schedulingStartTimeMillis);
     }
 
 }
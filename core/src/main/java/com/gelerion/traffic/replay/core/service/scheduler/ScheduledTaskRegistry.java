@@ -0,0 +1,63 @@
+package com.gelerion.traffic.replay.core.service.scheduler;
+
+import com.gelerion.traffic.replay.core.service.scheduler.model.ScheduledTask;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Live scheduled tasks grouped by kafka partition.
+ * Tasks unregister themselves once fired or cancelled, so the registry only ever holds pending work
+ * and revoking a partition costs as much as the number of tasks it still has.
+ */
+public class ScheduledTaskRegistry {
+    private final ConcurrentMap<Integer, Set<ScheduledTask>> tasksByPartition = new ConcurrentHashMap<>();
+    private final SchedulingPermits schedulingPermits;
+
+    public ScheduledTaskRegistry(SchedulingPermits schedulingPermits) {
+        this.schedulingPermits = schedulingPermits;
+        Metrics.gauge("scheduling", Tags.of("registry", "size"), this, ScheduledTaskRegistry::size);
+    }
+
+    /**
+     * Blocks until there is room for one more task, see {@link SchedulingPermits}.
+     * The task is added under the partition's entry lock, so a concurrent {@link #cancel(int)} either sees it
+     * or runs before it and leaves it to the caller's ownership check
+     */
+    public ScheduledTask admit(int partition) {
+        schedulingPermits.acquire();
+        ScheduledTask task = new ScheduledTask(partition, this);
+        tasksByPartition.compute(partition, (key, tasks) -> {
+            Set<ScheduledTask> partitionTasks = tasks != null ? tasks : ConcurrentHashMap.newKeySet();
+            partitionTasks.add(task);
+            return partitionTasks;
+        });
+        return task;
+    }
+
+    public int cancel(int partition) {
+        Set<ScheduledTask> tasks = tasksByPartition.remove(partition);
+        if (tasks == null) return 0;
+
+        int cancelled = 0;
+        for (ScheduledTask task : tasks) {
+            if (task.cancel()) cancelled++;
+        }
+        return cancelled;
+    }
+
+    public void onCompleted(ScheduledTask task) {
+        Set<ScheduledTask> tasks = tasksByPartition.get(task.partition());
+        if (tasks != null) {
+            tasks.remove(task);
+        }
+        schedulingPermits.release();
+    }
+
+    public int size() {
+        return tasksByPartition.values().stream().mapToInt(Set::size).sum();
+    }
+}
@@ -1,12 +1,11 @@
 package com.gelerion.traffic.replay.core.service.scheduler;
 
-import com.gelerion.traffic.replay.core.service.scheduler.model.ScheduleDelay;
-
 import java.util.concurrent.ScheduledFuture;
 
 public interface Scheduler {
 
-    ScheduledFuture<?> schedule(Runnable trigger, ScheduleDelay delay);
+    //a primitive delay, nothing per event is allocated on the way into the scheduler
+    ScheduledFuture<?> schedule(Runnable trigger, long delayMillis);
 
     int scheduledTasks();
 
@@ -0,0 +1,42 @@
+package com.gelerion.traffic.replay.core.service.scheduler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.SneakyThrows;
+
+import java.util.concurrent.Semaphore;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Admission control between the ingestion side and the {@link Scheduler}.
+ * Every scheduled task holds exactly one permit, which is returned as soon as the task fires or gets cancelled,
+ * so a blocked producer wakes up the moment there is room instead of polling the scheduler queue size.
+ */
+public class SchedulingPermits {
+    private final Timer blockedTimer     = Metrics.timer("scheduling", "admission", "blocked");
+    private final Counter throttledMeter = Metrics.counter("scheduling", "admission", "throttled");
+
+    private final Semaphore permits;
+
+    public SchedulingPermits(int maxScheduledTasks) {
+        this.permits = new Semaphore(maxScheduledTasks);
+        Metrics.gauge("scheduling", Tags.of("admission", "available-permits"), permits, Semaphore::availablePermits);
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    public void acquire() {
+        if (permits.tryAcquire()) return;
+
+        throttledMeter.increment();
+        long blockedSince = System.nanoTime();
+        permits.acquire();
+        blockedTimer.record(System.nanoTime() - blockedSince, NANOSECONDS);
+    }
+
+    public void release() {
+        permits.release();
+    }
+}
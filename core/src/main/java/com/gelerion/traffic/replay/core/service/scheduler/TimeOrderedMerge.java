@@ -0,0 +1,113 @@
+package com.gelerion.traffic.replay.core.service.scheduler;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * K-way merge of the per-partition streams into a single stream ordered by event time.
+ *
+ * Every partition tracks the latest timestamp it has seen, its watermark is that timestamp minus max-skew
+ * (the out-of-order tolerance within a partition). The global watermark is the lowest watermark across the partitions
+ * and everything at or below it is emitted in timestamp order. A partition that sent nothing for idle-ms doesn't hold
+ * the watermark back, once everything is idle the buffer is flushed. When the buffer exceeds its capacity the oldest
+ * events are emitted regardless of the watermark.
+ *
+ * Not thread safe, owned by the scheduling thread. Only the watermark lag gauges are read concurrently.
+ */
+@Slf4j
+public class TimeOrderedMerge<T> {
+    private final PriorityQueue<Entry<T>> buffer = new PriorityQueue<>();
+    private final Map<Integer, PartitionState> partitions = new HashMap<>();
+    private final long maxSkewMs;
+    private final long idleNanos;
+    private final int capacity;
+    private long sequence; //keeps events with the same timestamp in arrival order
+
+    public TimeOrderedMerge(long maxSkewMs, long idleMs, int capacity) {
+        this.maxSkewMs = maxSkewMs;
+        this.idleNanos = MILLISECONDS.toNanos(idleMs);
+        this.capacity = capacity;
+
+        log.info("Time ordered merge -- max skew: {}ms, idle after: {}ms, capacity: {}", maxSkewMs, idleMs, capacity);
+    }
+
+    public void add(int partition, long timestampMillis, T item) {
+        PartitionState state = partitions.computeIfAbsent(partition, PartitionState::new);
+        state.highMark = Math.max(state.highMark, timestampMillis);
+        state.lastSeenNanos = System.nanoTime();
+
+        buffer.add(new Entry<>(timestampMillis, sequence++, partition, item));
+    }
+
+    /**
+     * Emits everything at or below the watermark, plus the oldest events that don't fit into the buffer
+     */
+    public void emit(BiConsumer<Integer, T> consumer) {
+        long watermark = watermark();
+
+        Entry<T> head;
+        while ((head = buffer.peek()) != null && (head.timestamp <= watermark || buffer.size() > capacity)) {
+            buffer.poll();
+            consumer.accept(head.partition, head.item);
+        }
+    }
+
+    public boolean isEmpty() {
+        return buffer.isEmpty();
+    }
+
+    private long watermark() {
+        long now = System.nanoTime();
+        long watermark = Long.MAX_VALUE;
+        for (PartitionState state : partitions.values()) {
+            if (now - state.lastSeenNanos >= idleNanos) continue;
+            watermark = Math.min(watermark, state.highMark - maxSkewMs);
+        }
+
+        for (PartitionState state : partitions.values()) {
+            state.watermarkLag.set(watermark == Long.MAX_VALUE ? 0 : state.highMark - watermark);
+        }
+        return watermark;
+    }
+
+    private static class PartitionState {
+        private final AtomicLong watermarkLag;
+        private long highMark = Long.MIN_VALUE;
+        private long lastSeenNanos;
+
+        PartitionState(int partition) {
+            //how far the partition runs ahead of the global watermark
+            this.watermarkLag = Metrics.gauge("scheduling",
+                    Tags.of("partition", String.valueOf(partition), "merge", "watermark-lag-ms"), new AtomicLong());
+        }
+    }
+
+    private static class Entry<T> implements Comparable<Entry<T>> {
+        final long timestamp;
+        final long sequence;
+        final int partition;
+        final T item;
+
+        Entry(long timestamp, long sequence, int partition, T item) {
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+            this.partition = partition;
+            this.item = item;
+        }
+
+        @Override
+        public int compareTo(Entry<T> other) {
+            int result = Long.compare(timestamp, other.timestamp);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.gelerion.traffic.replay.core.service.scheduler.impl;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A trigger due at an absolute {@link System#nanoTime()} deadline, shared by the schedulers that manage their own timers
+ */
+abstract class DeadlineFutureTask extends FutureTask<Void> implements ScheduledFuture<Void> {
+    final long deadlineNanos;
+
+    DeadlineFutureTask(Runnable trigger, long deadlineNanos) {
+        super(trigger, null);
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public long getDelay(@NotNull TimeUnit unit) {
+        return unit.convert(deadlineNanos - System.nanoTime(), NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(@NotNull Delayed other) {
+        if (other instanceof DeadlineFutureTask) {
+            return Long.compare(deadlineNanos, ((DeadlineFutureTask) other).deadlineNanos);
+        }
+        return Long.compare(getDelay(NANOSECONDS), other.getDelay(NANOSECONDS));
+    }
+}
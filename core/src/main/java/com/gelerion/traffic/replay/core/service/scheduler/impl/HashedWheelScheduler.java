@@ -0,0 +1,250 @@
+package com.gelerion.traffic.replay.core.service.scheduler.impl;
+
+import com.gelerion.traffic.replay.core.service.scheduler.Scheduler;
+import com.gelerion.traffic.replay.core.utils.ShutdownService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.cfg4j.provider.ConfigurationProvider;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Hierarchical hashed timing wheel (Varghese & Lauck, scheme 7 -- the same layout the linux kernel timers use).
+ *
+ * Level 0 has wheel-size buckets of one tick each, every next level has wheel-size buckets each covering a whole
+ * revolution of the level below. A timeout is hashed into a bucket by its absolute deadline tick, so both insertion
+ * and cancellation are O(1). Whenever a lower level completes a revolution the matching bucket of the level above
+ * is cascaded down, until the timeout finally lands in level 0 and expires.
+ *
+ * The wheel itself is owned by a single thread, callers only append to lock-free queues. Expired triggers are
+ * handed off to an executor so a slow trigger never delays the next tick.
+ *
+ * Selected with scheduler.type: timing-wheel
+ *
+ * scheduler.timing-wheel.tick-ms    -- the resolution, a trigger fires at most one tick late
+ * scheduler.timing-wheel.wheel-size -- buckets per level, rounded up to the power of two. Bigger wheels need
+ *                                      fewer levels and cascade less often, at the cost of memory
+ * scheduler.core-pool-size          -- threads running the expired triggers
+ */
+@Slf4j
+public class HashedWheelScheduler implements Scheduler {
+    public static final String NAME = "timing-wheel";
+
+    private final long tickNanos;
+    private final int wheelBits;
+    private final int wheelMask;
+    private final Bucket[][] levels;
+
+    private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger scheduledTasks = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+    private final long startTimeNanos;
+    private long currentTick; //owned by the wheel thread
+
+    @Inject
+    public HashedWheelScheduler(ConfigurationProvider config) {
+        this(config.getProperty("scheduler.timing-wheel.tick-ms", Long.class),
+                config.getProperty("scheduler.timing-wheel.wheel-size", Integer.class),
+                config.getProperty("scheduler.core-pool-size", Integer.class));
+    }
+
+    public HashedWheelScheduler(long tickMs, int wheelSize, int executorThreads) {
+        if (tickMs <= 0) throw new IllegalArgumentException("Tick must be positive, got " + tickMs);
+        if (wheelSize <= 1) throw new IllegalArgumentException("Wheel size must be greater than 1, got " + wheelSize);
+
+        int normalizedWheelSize = Integer.highestOneBit(wheelSize - 1) << 1; //round up to the power of two
+        this.tickNanos = MILLISECONDS.toNanos(tickMs);
+        this.wheelBits = Integer.numberOfTrailingZeros(normalizedWheelSize);
+        this.wheelMask = normalizedWheelSize - 1;
+        //enough levels to address any positive tick
+        this.levels = new Bucket[(Long.SIZE - 1 + wheelBits - 1) / wheelBits][normalizedWheelSize];
+        for (Bucket[] level : levels) {
+            for (int i = 0; i < level.length; i++) level[i] = new Bucket();
+        }
+
+        this.executor = new ThreadPoolExecutor(executorThreads, executorThreads, 0L, MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("timing-wheel-executor-%d").build());
+
+        this.startTimeNanos = System.nanoTime();
+        createWheelThread().start();
+        registerMetrics();
+
+        log.info("Timing wheel started -- tick: {}ms, wheel size: {}, levels: {}", tickMs, normalizedWheelSize, levels.length);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable trigger, long delayMillis) {
+        long deadlineNanos = System.nanoTime() + MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        WheelTimeout timeout = new WheelTimeout(trigger, deadlineNanos);
+
+        scheduledTasks.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public int scheduledTasks() {
+        return scheduledTasks.get();
+    }
+
+    private void advance() {
+        waitForCurrentTick();
+        removeCancelledTimeouts();
+        cascade();
+        transferPendingTimeouts();
+        levels[0][(int) (currentTick & wheelMask)].drainTo(this::expire);
+        currentTick++;
+    }
+
+    private void waitForCurrentTick() {
+        long deadline = startTimeNanos + currentTick * tickNanos;
+        long sleepNanos;
+        while ((sleepNanos = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, sleepNanos);
+        }
+    }
+
+    private void removeCancelledTimeouts() {
+        WheelTimeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            //still pending timeouts are dropped on transfer, already expired ones have no bucket anymore
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+                scheduledTasks.decrementAndGet();
+            }
+        }
+    }
+
+    //a bucket of level N is due once all levels below it have completed a full revolution
+    private void cascade() {
+        for (int level = 1; level < levels.length; level++) {
+            int shift = wheelBits * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0) return;
+            levels[level][(int) ((currentTick >>> shift) & wheelMask)].drainTo(this::place);
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        WheelTimeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.isCancelled()) {
+                scheduledTasks.decrementAndGet();
+                continue;
+            }
+            place(timeout);
+        }
+    }
+
+    private void place(WheelTimeout timeout) {
+        long deadlineTick = Math.max(timeout.deadlineTick, currentTick);
+        long ticks = deadlineTick - currentTick;
+
+        int level = 0;
+        while (level < levels.length - 1 && ticks >= (1L << (wheelBits * (level + 1)))) {
+            level++;
+        }
+
+        levels[level][(int) ((deadlineTick >>> (wheelBits * level)) & wheelMask)].add(timeout);
+    }
+
+    private void expire(WheelTimeout timeout) {
+        scheduledTasks.decrementAndGet();
+        if (!timeout.isCancelled()) {
+            executor.execute(timeout);
+        }
+    }
+
+    private Thread createWheelThread() {
+        return new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("timing-wheel-thread")
+                .setUncaughtExceptionHandler((thread, ex) -> {
+                    log.error("Unexpected error - {} - shutting down", thread, ex);
+                    ShutdownService.shutDown();
+                })
+                .build()
+                .newThread(() -> ShutdownService.whileNotStopped(this::advance));
+    }
+
+    private void registerMetrics() {
+        Metrics.gauge("scheduler", Tags.of("execution", "active-count"), executor, ThreadPoolExecutor::getActiveCount);
+        Metrics.gauge("scheduler", Tags.of("execution", "pool-size"), executor, ThreadPoolExecutor::getPoolSize);
+        Metrics.gauge("scheduler", Tags.of("execution", "task-count"), executor, ThreadPoolExecutor::getTaskCount);
+        Metrics.gauge("scheduler", Tags.of("execution", "completed-task-count"), executor, ThreadPoolExecutor::getCompletedTaskCount);
+        Metrics.gauge("scheduler", Tags.of("queue", "size"), scheduledTasks, AtomicInteger::get);
+    }
+
+    private class WheelTimeout extends DeadlineFutureTask {
+        private final long deadlineTick;
+
+        //intrusive bucket links, touched by the wheel thread only
+        private Bucket bucket;
+        private WheelTimeout prev;
+        private WheelTimeout next;
+
+        WheelTimeout(Runnable trigger, long deadlineNanos) {
+            super(trigger, deadlineNanos);
+            this.deadlineTick = (deadlineNanos - startTimeNanos + tickNanos - 1) / tickNanos;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                cancelledTimeouts.add(this);
+            }
+            return cancelled;
+        }
+    }
+
+    private static class Bucket {
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(WheelTimeout timeout) {
+            if (timeout.prev != null) timeout.prev.next = timeout.next; else head = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev; else tail = timeout.prev;
+            unlink(timeout);
+        }
+
+        void drainTo(Consumer<WheelTimeout> consumer) {
+            WheelTimeout timeout = head;
+            head = tail = null;
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                unlink(timeout);
+                consumer.accept(timeout);
+                timeout = next;
+            }
+        }
+
+        private static void unlink(WheelTimeout timeout) {
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.gelerion.traffic.replay.core.service.scheduler.impl;
 
-import com.gelerion.traffic.replay.core.service.scheduler.model.ScheduleDelay;
 import com.gelerion.traffic.replay.core.service.scheduler.Scheduler;
 import com.google.inject.Inject;
 import io.micrometer.core.instrument.Metrics;
@@ -14,6 +13,8 @@ import java.util.concurrent.ThreadPoolExecutor;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 public class JavaExecutorScheduler implements Scheduler {
+    public static final String NAME = "java-executor";
+
     private final ScheduledThreadPoolExecutor impl;
 
     @Inject
@@ -25,8 +26,8 @@ public class JavaExecutorScheduler implements Scheduler {
     }
 
     @Override
-    public ScheduledFuture<?> schedule(Runnable trigger, ScheduleDelay delay) {
-        return impl.schedule(trigger, delay.millis(), MILLISECONDS);
+    public ScheduledFuture<?> schedule(Runnable trigger, long delayMillis) {
+        return impl.schedule(trigger, delayMillis, MILLISECONDS);
     }
 
     @Override
@@ -0,0 +1,144 @@
+package com.gelerion.traffic.replay.core.service.scheduler.impl;
+
+import com.gelerion.traffic.replay.core.service.scheduler.Scheduler;
+import com.gelerion.traffic.replay.core.utils.ShutdownService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.cfg4j.provider.ConfigurationProvider;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Trades CPU for firing accuracy.
+ *
+ * A dedicated timer thread parks until the earliest trigger is spin-us away and busy-spins the rest,
+ * then hands every due trigger to the executor. Parking alone oversleeps by the OS timer slack (often 50us+,
+ * way more under load), spinning the final stretch brings the lateness down to the time it takes to dispatch.
+ *
+ * Cancelled triggers are not removed from the queue, they are dropped once they become due.
+ */
+@Slf4j
+public class PrecisionScheduler implements Scheduler {
+    public static final String NAME = "precision";
+
+    private final Timer latenessTimer = Timer.builder("scheduler")
+            .tags(Tags.of("precision", "lateness"))
+            .publishPercentiles(0.5, 0.9, 0.99, 0.999)
+            .register(Metrics.globalRegistry);
+
+    private final PriorityBlockingQueue<PrecisionTask> queue = new PriorityBlockingQueue<>();
+    private final AtomicInteger scheduledTasks = new AtomicInteger();
+    private final ThreadPoolExecutor executor;
+    private final long spinNanos;
+    private final Thread timerThread;
+
+    @Inject
+    public PrecisionScheduler(ConfigurationProvider config) {
+        this(config.getProperty("scheduler.precision.spin-us", Long.class),
+                config.getProperty("scheduler.core-pool-size", Integer.class));
+    }
+
+    public PrecisionScheduler(long spinMicros, int executorThreads) {
+        this.spinNanos = MICROSECONDS.toNanos(spinMicros);
+        this.executor = new ThreadPoolExecutor(executorThreads, executorThreads, 0L, MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("precision-executor-%d").build());
+
+        this.timerThread = createTimerThread();
+        this.timerThread.start();
+        registerMetrics();
+
+        log.info("Precision scheduler started -- spin: {}us", spinMicros);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable trigger, long delayMillis) {
+        long deadlineNanos = System.nanoTime() + MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        PrecisionTask task = new PrecisionTask(trigger, deadlineNanos);
+
+        scheduledTasks.incrementAndGet();
+        queue.add(task);
+        //the timer thread might be parked until a later deadline
+        if (queue.peek() == task) {
+            LockSupport.unpark(timerThread);
+        }
+        return task;
+    }
+
+    @Override
+    public int scheduledTasks() {
+        return scheduledTasks.get();
+    }
+
+    private void fireDueTasks() {
+        PrecisionTask head = queue.peek();
+        if (head == null) {
+            LockSupport.park(this);
+            return;
+        }
+
+        long remainingNanos = head.deadlineNanos - System.nanoTime();
+        if (remainingNanos > spinNanos) {
+            LockSupport.parkNanos(this, remainingNanos - spinNanos);
+            return; //re-check, an earlier trigger might have arrived meanwhile
+        }
+
+        while (System.nanoTime() < head.deadlineNanos) {
+            Thread.onSpinWait();
+        }
+
+        long now = System.nanoTime();
+        PrecisionTask task;
+        while ((task = queue.peek()) != null && task.deadlineNanos <= now) {
+            task = queue.poll();
+            if (task.isCancelled()) continue;
+
+            latenessTimer.record(now - task.deadlineNanos, NANOSECONDS);
+            executor.execute(task);
+        }
+    }
+
+    private Thread createTimerThread() {
+        return new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("precision-timer-thread")
+                .setPriority(Thread.MAX_PRIORITY)
+                .setUncaughtExceptionHandler((t, ex) -> {
+                    log.error("Unexpected error - {} - shutting down", t, ex);
+                    ShutdownService.shutDown();
+                })
+                .build()
+                .newThread(() -> ShutdownService.whileNotStopped(this::fireDueTasks));
+    }
+
+    private void registerMetrics() {
+        Metrics.gauge("scheduler", Tags.of("execution", "active-count"), executor, ThreadPoolExecutor::getActiveCount);
+        Metrics.gauge("scheduler", Tags.of("execution", "pool-size"), executor, ThreadPoolExecutor::getPoolSize);
+        Metrics.gauge("scheduler", Tags.of("execution", "task-count"), executor, ThreadPoolExecutor::getTaskCount);
+        Metrics.gauge("scheduler", Tags.of("execution", "completed-task-count"), executor, ThreadPoolExecutor::getCompletedTaskCount);
+        Metrics.gauge("scheduler", Tags.of("queue", "size"), scheduledTasks, AtomicInteger::get);
+    }
+
+    private class PrecisionTask extends DeadlineFutureTask {
+
+        PrecisionTask(Runnable trigger, long deadlineNanos) {
+            super(trigger, deadlineNanos);
+        }
+
+        //invoked exactly once, either after the trigger ran or when it got cancelled
+        @Override
+        protected void done() {
+            scheduledTasks.decrementAndGet();
+        }
+    }
+}
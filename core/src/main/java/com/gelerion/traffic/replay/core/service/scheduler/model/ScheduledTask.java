@@ -0,0 +1,60 @@
+package com.gelerion.traffic.replay.core.service.scheduler.model;
+
+import com.gelerion.traffic.replay.core.service.scheduler.ScheduledTaskRegistry;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A trigger registered in the {@link ScheduledTaskRegistry} and handed to the scheduler.
+ * Firing and cancellation race for the same flag, whichever wins completes the task exactly once --
+ * removes it from the registry and returns its admission permit.
+ */
+public class ScheduledTask {
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private volatile boolean cancelled;
+    private final int partition;
+    private final ScheduledTaskRegistry registry;
+    private volatile ScheduledFuture<?> future;
+
+    public ScheduledTask(int partition, ScheduledTaskRegistry registry) {
+        this.partition = partition;
+        this.registry = registry;
+    }
+
+    public int partition() {
+        return partition;
+    }
+
+    public Runnable completeOnFire(Runnable trigger) {
+        return () -> {
+            if (!claimed.compareAndSet(false, true)) return; //cancelled
+
+            try {
+                trigger.run();
+            } finally {
+                registry.onCompleted(this);
+            }
+        };
+    }
+
+    public void scheduledAs(ScheduledFuture<?> future) {
+        this.future = future;
+        //cancelled before the scheduler handed out the future, make sure it doesn't linger in the scheduler
+        if (cancelled) {
+            future.cancel(false);
+        }
+    }
+
+    public boolean cancel() {
+        if (!claimed.compareAndSet(false, true)) return false; //fired or already cancelled
+        cancelled = true;
+
+        ScheduledFuture<?> scheduled = future;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        registry.onCompleted(this);
+        return true;
+    }
+}
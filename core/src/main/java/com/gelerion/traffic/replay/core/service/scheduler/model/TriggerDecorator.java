@@ -8,30 +8,36 @@ import io.micrometer.core.instrument.Tags;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
-import java.time.ZonedDateTime;
+import java.time.Instant;
 
 @Slf4j
 @Value(staticConstructor = "of")
 public class TriggerDecorator {
-    private static DistributionSummary schedulingAccuracyHistogram = Metrics.summary("scheduling", Tags.of("execution", "accuracy-ms"));
+    private static DistributionSummary schedulingAccuracyHistogram = DistributionSummary.builder("scheduling")
+            .tags(Tags.of("execution", "accuracy-ms"))
+            .publishPercentiles(0.5, 0.9, 0.99, 0.999)
+            .register(Metrics.globalRegistry);
     private static Counter executed = Metrics.counter("scheduling", Tags.of("execution", "executed"));
     private static Counter responseFailureCounter = Metrics.counter("http", "request", "failure");
 
 
     private final Event event;
-    private final ScheduleDelay schedulingTime;
+    private final long triggerFireTimeMillis;
 
     public Runnable measureAccuracy(Runnable trigger) {
         return () -> {
-            ZonedDateTime now = ZonedDateTime.now();
+            long now = System.currentTimeMillis();
             //0 is perfect, positive is running late
-            long schedulingAccuracy = schedulingTime.differenceBetweenTriggerScheduledTimeAnd(now);
+            long schedulingAccuracy = now - triggerFireTimeMillis;
             schedulingAccuracyHistogram.record(schedulingAccuracy);
 
-            log.debug("Scheduled for: {}\n\t" +
-                    "Now: {}\n\t" +
-                    "Scheduling accuracy: {}\n\t" +
-                    "Event: {}", schedulingTime.getTriggerFireTime(), now, schedulingAccuracy, event);
+            if (log.isDebugEnabled()) {
+                log.debug("Scheduled for: {}\n\t" +
+                        "Now: {}\n\t" +
+                        "Scheduling accuracy: {}\n\t" +
+                        "Event: {}", Instant.ofEpochMilli(triggerFireTimeMillis), Instant.ofEpochMilli(now),
+                        schedulingAccuracy, event);
+            }
 
             executed.increment();
             trigger.run();
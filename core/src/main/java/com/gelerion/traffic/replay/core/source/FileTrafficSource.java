@@ -0,0 +1,245 @@
+package com.gelerion.traffic.replay.core.source;
+
+import com.gelerion.traffic.replay.core.channels.AsyncChannel;
+import com.gelerion.traffic.replay.core.kafka.PartitionWhitelist;
+import com.gelerion.traffic.replay.core.utils.ShutdownService;
+import com.github.luben.zstd.ZstdInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.cfg4j.provider.ConfigurationProvider;
+import org.cfg4j.provider.GenericType;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.concurrent.TimeUnit.DAYS;
+
+/**
+ * Replays newline delimited records from local files instead of kafka, e.g. exported query logs.
+ *
+ * Every file is a partition of its own, numbered in the order of source.file.paths (directories are expanded
+ * in name order) and read by one of source.file.readers threads, so the order within a file is kept.
+ * Plain files are memory mapped, .gz and .zst files are streamed through a source.file.buffer-size buffer.
+ * The line number is the record offset.
+ */
+@Slf4j
+public class FileTrafficSource implements TrafficSource {
+    public static final String NAME = "file";
+    //a mapped buffer is int indexed, large files are mapped region by region
+    private static final long MAX_REGION_SIZE = 1L << 30;
+    private static final byte NEW_LINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final Counter read = Metrics.counter("source", "file", "read");
+
+    private final AsyncChannel<ConsumerRecord<byte[], byte[]>> channel;
+    private final List<Path> files;
+    private final int readers;
+    private final int bufferSize;
+    private final int batchSize;
+
+    @Inject
+    public FileTrafficSource(ConfigurationProvider config, AsyncChannel<ConsumerRecord<byte[], byte[]>> channel) {
+        this.channel = channel;
+        this.files = expand(config.getProperty("source.file.paths", new GenericType<List<String>>() {}));
+        this.readers = config.getProperty("source.file.readers", Integer.class);
+        this.bufferSize = config.getProperty("source.file.buffer-size", Integer.class);
+        this.batchSize = config.getProperty("channel.batch-size", Integer.class);
+
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("File source needs at least one file in source.file.paths");
+        }
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    @Override
+    public void startProcessing() {
+        //there is no rebalancing, every file is ours for the whole replay
+        PartitionWhitelist.INSTANCE.add(IntStream.range(0, files.size()).boxed().collect(Collectors.toSet()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(readers, new ThreadFactoryBuilder()
+                .setNameFormat("file-reader-%d")
+                .build());
+        log.info("Reading {} files with {} readers", files.size(), readers);
+
+        for (int partition = 0; partition < files.size(); partition++) {
+            Path file = files.get(partition);
+            Batch batch = new Batch(file.getFileName().toString(), partition);
+            executor.execute(() -> {
+                try {
+                    read(file, batch);
+                    log.info("Done reading {}, {} records", file, batch.offset);
+                } catch (Exception e) {
+                    log.error("Failed to read {}", file, e);
+                    ShutdownService.shutDown();
+                }
+            });
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, DAYS);
+        log.info("All the files are read");
+    }
+
+    private void read(Path file, Batch batch) throws IOException {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".gz")) {
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file), bufferSize)) {
+                splitLines(in, batch);
+            }
+        } else if (name.endsWith(".zst")) {
+            try (InputStream in = new ZstdInputStream(new BufferedInputStream(Files.newInputStream(file), bufferSize))) {
+                splitLines(in, batch);
+            }
+        } else {
+            splitLines(file, batch);
+        }
+        batch.flush();
+    }
+
+    private void splitLines(Path file, Batch batch) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file, READ)) {
+            long size = fileChannel.size();
+            long position = 0;
+            while (position < size && !ShutdownService.isCancelled()) {
+                long regionSize = Math.min(size - position, MAX_REGION_SIZE);
+                MappedByteBuffer region = fileChannel.map(READ_ONLY, position, regionSize);
+
+                int consumed = splitLines(region, position + regionSize == size, batch);
+                if (consumed == 0) {
+                    throw new IllegalStateException("A record at " + position + " of " + file + " is larger than " + MAX_REGION_SIZE);
+                }
+                position += consumed; //the next region starts at the first incomplete line
+            }
+        }
+    }
+
+    //returns the number of bytes consumed, up to the end of the last complete line unless it is the last region
+    private int splitLines(MappedByteBuffer region, boolean lastRegion, Batch batch) {
+        int lineStart = 0;
+        int limit = region.limit();
+        for (int i = 0; i < limit; i++) {
+            if (region.get(i) == NEW_LINE) {
+                batch.add(copy(region, lineStart, i));
+                lineStart = i + 1;
+            }
+        }
+
+        if (!lastRegion) return lineStart;
+        if (lineStart < limit) batch.add(copy(region, lineStart, limit));
+        return limit;
+    }
+
+    private void splitLines(InputStream in, Batch batch) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        int start = 0; //of the current line
+        int end = 0;   //of the data in the buffer
+
+        while (!ShutdownService.isCancelled()) {
+            if (end == buffer.length) {
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                } else {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2); //the line doesn't fit
+                }
+            }
+
+            int count = in.read(buffer, end, buffer.length - end);
+            if (count < 0) break;
+
+            for (int i = end; i < end + count; i++) {
+                if (buffer[i] == NEW_LINE) {
+                    batch.add(copy(buffer, start, i));
+                    start = i + 1;
+                }
+            }
+            end += count;
+        }
+
+        if (start < end) batch.add(copy(buffer, start, end));
+    }
+
+    private static byte[] copy(MappedByteBuffer region, int from, int to) {
+        if (to > from && region.get(to - 1) == CARRIAGE_RETURN) to--;
+
+        byte[] line = new byte[to - from];
+        region.position(from);
+        region.get(line);
+        return line;
+    }
+
+    private static byte[] copy(byte[] buffer, int from, int to) {
+        if (to > from && buffer[to - 1] == CARRIAGE_RETURN) to--;
+        return Arrays.copyOfRange(buffer, from, to);
+    }
+
+    @SneakyThrows(IOException.class)
+    private static List<Path> expand(List<String> paths) {
+        List<Path> files = new ArrayList<>();
+        for (String path : paths) {
+            Path file = Paths.get(path);
+            if (!Files.isDirectory(file)) {
+                files.add(file);
+                continue;
+            }
+            try (Stream<Path> children = Files.list(file)) {
+                children.filter(Files::isRegularFile).sorted().forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    //records of a single file, handed to the channel channel.batch-size at a time
+    private class Batch {
+        private final List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>(batchSize);
+        private final String topic;
+        private final int partition;
+        private long offset;
+
+        Batch(String topic, int partition) {
+            this.topic = topic;
+            this.partition = partition;
+        }
+
+        void add(byte[] line) {
+            long lineOffset = offset++;
+            if (line.length == 0) return;
+
+            records.add(new ConsumerRecord<>(topic, partition, lineOffset, null, line));
+            if (records.size() >= batchSize) flush();
+        }
+
+        void flush() {
+            if (records.isEmpty()) return;
+
+            //blocks while the channel is full, there is no group membership to keep alive
+            channel.putAll(records);
+            read.increment(records.size());
+            records.clear();
+        }
+    }
+}
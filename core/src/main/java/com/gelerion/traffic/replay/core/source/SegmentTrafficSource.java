@@ -0,0 +1,80 @@
+package com.gelerion.traffic.replay.core.source;
+
+import com.gelerion.traffic.replay.core.channels.AsyncChannel;
+import com.gelerion.traffic.replay.core.kafka.PartitionWhitelist;
+import com.gelerion.traffic.replay.core.segment.SegmentFeed;
+import com.gelerion.traffic.replay.core.service.scheduler.ScheduleTimeCalculator;
+import com.gelerion.traffic.replay.core.utils.ShutdownService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.cfg4j.provider.ConfigurationProvider;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+
+/**
+ * Replays the segments written by SegmentCompiler from source.segment.dir, the records are not parsed again.
+ *
+ * Every partition starts at the replay time of now on the original timeline, the same point
+ * kafka.use-timestamp-seek seeks to, and is read by one of source.segment.readers threads.
+ */
+@Slf4j
+public class SegmentTrafficSource implements TrafficSource {
+    public static final String NAME = "segment";
+
+    private final AsyncChannel<ConsumerRecord<byte[], byte[]>> channel;
+    private final ScheduleTimeCalculator scheduleTimeCalculator;
+    private final Path dir;
+    private final int readers;
+    private final int batchSize;
+
+    @Inject
+    public SegmentTrafficSource(ConfigurationProvider config,
+                                AsyncChannel<ConsumerRecord<byte[], byte[]>> channel,
+                                ScheduleTimeCalculator scheduleTimeCalculator) {
+        this.channel = channel;
+        this.scheduleTimeCalculator = scheduleTimeCalculator;
+        this.dir = Paths.get(config.getProperty("source.segment.dir", String.class));
+        this.readers = config.getProperty("source.segment.readers", Integer.class);
+        this.batchSize = config.getProperty("channel.batch-size", Integer.class);
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    @Override
+    public void startProcessing() {
+        Map<Integer, List<Path>> partitions = SegmentFeed.segmentsByPartition(dir);
+        if (partitions.isEmpty()) {
+            throw new IllegalArgumentException("No replay segments found in " + dir);
+        }
+        PartitionWhitelist.INSTANCE.add(partitions.keySet());
+
+        long seekTimestamp = scheduleTimeCalculator.computeOriginalStartTimeMillis(System.currentTimeMillis());
+        ExecutorService executor = Executors.newFixedThreadPool(readers, new ThreadFactoryBuilder()
+                .setNameFormat("segment-reader-%d")
+                .build());
+        log.info("Reading {} partitions from {} with {} readers, starting at {}", partitions.size(), dir, readers, seekTimestamp);
+
+        partitions.forEach((partition, segments) -> executor.execute(() -> {
+            try {
+                long records = new SegmentFeed(partition, segments, batchSize).feed(channel, seekTimestamp);
+                log.info("Done reading partition {}, {} records", partition, records);
+            } catch (Exception e) {
+                log.error("Failed to read the segments of partition {}", partition, e);
+                ShutdownService.shutDown();
+            }
+        }));
+
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, DAYS);
+        log.info("All the segments are read");
+    }
+}
@@ -0,0 +1,32 @@
+package com.gelerion.traffic.replay.core.source;
+
+import com.gelerion.traffic.replay.core.kafka.TrafficReader;
+import org.cfg4j.provider.ConfigurationProvider;
+
+/**
+ * Where the records come from, every source feeds the same channel
+ */
+public interface TrafficSource {
+
+    /**
+     * Blocks until the source is exhausted or the replay is stopped
+     */
+    void startProcessing();
+
+    /**
+     * Threads of the configured source.type writing into the channel concurrently
+     */
+    static int producerThreads(ConfigurationProvider config) {
+        String type = config.getProperty("source.type", String.class);
+        switch (type) {
+            case TrafficReader.NAME:
+                return config.getProperty("kafka.consumer-threads", Integer.class);
+            case FileTrafficSource.NAME:
+                return config.getProperty("source.file.readers", Integer.class);
+            case SegmentTrafficSource.NAME:
+                return config.getProperty("source.segment.readers", Integer.class);
+            default:
+                throw new IllegalArgumentException("Unknown traffic source type " + type);
+        }
+    }
+}
@@ -6,11 +6,15 @@ import okhttp3.Response;
 import java.util.concurrent.TimeUnit;
 
 public class HttpInterceptors {
+    public static final String X_LOADER_REQUEST_START_TIME = "X-Loader-Request-Start-Time-Ms";
     public static final String X_LOADER_RESPONSE_TIME = "X-Loader-Response-Time-Ms";
 
+    //an application interceptor runs once the dispatcher executes the call, not when the call is enqueued
     public static final Interceptor MEASURE_RESPONSE_TIME_INTERCEPTOR = chain -> {
+        long requestStartTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
         Response response = chain.proceed(chain.request());
         return response.newBuilder()
+                .addHeader(X_LOADER_REQUEST_START_TIME, String.valueOf(requestStartTimeMs))
                 .addHeader(X_LOADER_RESPONSE_TIME, String.valueOf(TimeUnit.NANOSECONDS.toMillis(System.nanoTime())))
                 .build();
     };
@@ -12,6 +12,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.stream.Stream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.toList;
 import static org.zalando.fauxpas.FauxPas.throwingFunction;
 
@@ -37,6 +38,10 @@ public class ZkClient {
                 .collect(toList());
     }
 
+    public String getString(String path) {
+        return new String(throwingFunction((String node) -> client.getData().forPath(node)).apply(path), UTF_8).trim();
+    }
+
     private ThrowingFunction<String, byte[], Exception> getData() {
         return throwingFunction(id -> client.getData().forPath("/brokers/ids/" + id));
     }
@@ -0,0 +1,60 @@
+package com.gelerion.traffic.replay.core.kafka;
+
+import com.gelerion.traffic.replay.core.kafka.types.KafkaRecords;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//the whitelist is process wide, every test uses partitions of its own
+class PartitionWhitelistTest {
+    private final PartitionWhitelist whitelist = PartitionWhitelist.INSTANCE;
+
+    @Test
+    void recordsOfThePreviousOwnerDontPassForTheNewOne() {
+        long previousOwner = whitelist.nextGeneration();
+        whitelist.add(Map.of(1000, previousOwner));
+        ConsumerRecord<byte[], byte[]> leftBehind = tagged(1000, previousOwner);
+
+        //eager rebalance, the previous owner gives the partition up before a sibling consumer gets it
+        whitelist.remove(Map.of(1000, previousOwner));
+        long newOwner = whitelist.nextGeneration();
+        whitelist.add(Map.of(1000, newOwner));
+
+        assertFalse(whitelist.contains(1000, KafkaRecords.generation(leftBehind)));
+        assertTrue(whitelist.contains(1000, KafkaRecords.generation(tagged(1000, newOwner))));
+    }
+
+    @Test
+    void aLateRevocationDoesNotRemoveTheNewOwner() {
+        long previousOwner = whitelist.nextGeneration();
+        long newOwner = whitelist.nextGeneration();
+        whitelist.add(Map.of(1001, newOwner));
+
+        whitelist.remove(Map.of(1001, previousOwner));
+
+        assertTrue(whitelist.contains(1001));
+        assertEquals(newOwner, whitelist.generation(1001));
+    }
+
+    @Test
+    void untaggedRecordsOnlyNeedTheirPartitionWhitelisted() {
+        whitelist.add(Set.of(1002));
+        ConsumerRecord<byte[], byte[]> fileRecord = new ConsumerRecord<>("", 1002, 0, new byte[0], new byte[0]);
+
+        assertEquals(PartitionWhitelist.UNTAGGED, KafkaRecords.generation(fileRecord));
+        assertTrue(whitelist.contains(1002, KafkaRecords.generation(fileRecord)));
+        assertFalse(whitelist.contains(1003, KafkaRecords.generation(fileRecord)));
+    }
+
+    private static ConsumerRecord<byte[], byte[]> tagged(int partition, long generation) {
+        ConsumerRecord<byte[], byte[]> record = new ConsumerRecord<>("topic", partition, 0, new byte[0], new byte[0]);
+        record.headers().add(KafkaRecords.generationHeader(generation));
+        return record;
+    }
+}
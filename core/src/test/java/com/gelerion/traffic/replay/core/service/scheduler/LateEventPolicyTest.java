@@ -0,0 +1,53 @@
+package com.gelerion.traffic.replay.core.service.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LateEventPolicyTest {
+    private static final long NOW = 1_572_307_200_000L;
+
+    @Test
+    void eventsOnTimeKeepTheirFireTime() {
+        for (String policy : new String[]{LateEventPolicy.DROP, LateEventPolicy.FIRE_IMMEDIATELY, LateEventPolicy.CATCH_UP}) {
+            LateEventPolicy lateEventPolicy = new LateEventPolicy(policy, 1000, 10);
+
+            assertEquals(NOW, lateEventPolicy.reschedule(NOW, NOW));
+            assertEquals(NOW + 5, lateEventPolicy.reschedule(NOW + 5, NOW));
+        }
+    }
+
+    @Test
+    void eventsBeforeTheQueryCutoffAreAlwaysDropped() {
+        for (String policy : new String[]{LateEventPolicy.DROP, LateEventPolicy.FIRE_IMMEDIATELY, LateEventPolicy.CATCH_UP}) {
+            LateEventPolicy lateEventPolicy = new LateEventPolicy(policy, 1000, 10);
+
+            assertEquals(LateEventPolicy.DROPPED, lateEventPolicy.reschedule(ScheduleTimeCalculator.BEFORE_QUERY_CUTOFF, NOW));
+        }
+    }
+
+    @Test
+    void dropSkipsLateEvents() {
+        assertEquals(LateEventPolicy.DROPPED, new LateEventPolicy(LateEventPolicy.DROP, 0, 0).reschedule(NOW - 1, NOW));
+    }
+
+    @Test
+    void fireImmediatelyFiresLateEventsNow() {
+        assertEquals(NOW, new LateEventPolicy(LateEventPolicy.FIRE_IMMEDIATELY, 0, 0).reschedule(NOW - 1000, NOW));
+    }
+
+    @Test
+    void catchUpPacesLateEventsAndDropsWhatDoesNotFitTheWindow() {
+        //a slot every 100ms, 5 of them fit into the window
+        LateEventPolicy lateEventPolicy = new LateEventPolicy(LateEventPolicy.CATCH_UP, 450, 10);
+
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long fireTime = lateEventPolicy.reschedule(NOW - 1000, NOW);
+            assertTrue(fireTime >= NOW && fireTime > previous, "slot " + i + " at " + fireTime);
+            previous = fireTime;
+        }
+        assertEquals(LateEventPolicy.DROPPED, lateEventPolicy.reschedule(NOW - 1000, NOW));
+    }
+}
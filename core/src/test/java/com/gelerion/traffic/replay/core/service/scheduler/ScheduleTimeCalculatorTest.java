@@ -0,0 +1,78 @@
+package com.gelerion.traffic.replay.core.service.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScheduleTimeCalculatorTest {
+    private static final Instant QUERY_CUTOFF_TIME = Instant.parse("2019-10-28T00:00:00.000Z");
+    private static final Instant SCHEDULING_START_TIME = Instant.parse("2019-10-29T00:00:00.000Z");
+
+    @Test
+    void computesTheFireTimeWithASpeedupFactor() {
+        ScheduleTimeCalculator calculator = calculator(RateProfile.constant(2));
+
+        long fireTime = calculator.compute(Instant.parse("2019-10-28T02:11:17.036Z"));
+
+        assertEquals(Instant.parse("2019-10-29T01:05:38.518Z").toEpochMilli(), fireTime);
+    }
+
+    @Test
+    void computesTheOriginalStartTimeWithASpeedupFactor() {
+        ScheduleTimeCalculator calculator = calculator(RateProfile.constant(2));
+
+        long original = calculator.computeOriginalStartTimeMillis(Instant.parse("2019-10-29T02:25:00.000Z").toEpochMilli());
+
+        assertEquals(Instant.parse("2019-10-28T04:50:00.000Z").toEpochMilli(), original);
+    }
+
+    @Test
+    void eventsBeforeTheQueryCutoffAreNeverScheduled() {
+        ScheduleTimeCalculator calculator = calculator(RateProfile.constant(2));
+
+        assertEquals(ScheduleTimeCalculator.BEFORE_QUERY_CUTOFF, calculator.compute(QUERY_CUTOFF_TIME.minusMillis(1)));
+    }
+
+    @Test
+    void originalStartTimeInvertsTheFireTimeWithAConstantRate() {
+        assertRoundTrip(RateProfile.constant(1), 1);
+        assertRoundTrip(RateProfile.constant(2), 2);
+        assertRoundTrip(RateProfile.constant(0.5), 1);
+        assertRoundTrip(RateProfile.constant(7.3), 8);
+    }
+
+    @Test
+    void originalStartTimeInvertsTheFireTimeWithARateProfile() {
+        assertRoundTrip(RateProfile.parse(List.of("30m 1x->8x", "1h 8x", "10m 8x->2x"), 1), 8);
+        assertRoundTrip(RateProfile.parse(List.of("5m 0.5x", "2h 3x->12x", "20x"), 1), 20);
+    }
+
+    //the fire time is truncated to a replay millisecond, which covers at most maxRate original milliseconds
+    private static void assertRoundTrip(RateProfile rateProfile, long maxRate) {
+        ScheduleTimeCalculator calculator = calculator(rateProfile);
+        Random random = new Random(42);
+        long previousFireTime = Long.MIN_VALUE;
+
+        for (long offset = 0; offset < 6 * 3600_000L; offset += 1 + random.nextInt(5_000)) {
+            long original = QUERY_CUTOFF_TIME.toEpochMilli() + offset;
+            long fireTime = calculator.compute(original);
+            long restored = calculator.computeOriginalStartTimeMillis(fireTime);
+
+            assertTrue(Math.abs(original - restored) <= maxRate,
+                    "original " + original + " restored " + restored + " fire time " + fireTime);
+            assertTrue(fireTime >= previousFireTime, "fire times must not go backwards at " + original);
+            //seeking to the restored time never skips the event
+            assertTrue(calculator.compute(restored) <= fireTime);
+            previousFireTime = fireTime;
+        }
+    }
+
+    private static ScheduleTimeCalculator calculator(RateProfile rateProfile) {
+        return new ScheduleTimeCalculator(rateProfile, QUERY_CUTOFF_TIME, SCHEDULING_START_TIME);
+    }
+}
@@ -1,22 +1,35 @@
 package com.gelerion.traffic.replay.druid;
 
-import com.gelerion.traffic.replay.api.RecordProcessor;
+import com.gelerion.traffic.replay.api.CompilableRecordProcessor;
+import com.gelerion.traffic.replay.api.model.ProcessedBatch;
 import com.gelerion.traffic.replay.druid.config.DruidConfig;
+import com.gelerion.traffic.replay.druid.filter.RecordPrefilter;
 import com.gelerion.traffic.replay.druid.model.DruidEvent;
 import com.gelerion.traffic.replay.druid.parser.RecordParser;
 import com.gelerion.traffic.replay.druid.parser.RecordParserFactory;
+import com.gelerion.traffic.replay.druid.rewrite.QueryRewriter;
+import lombok.extern.slf4j.Slf4j;
 import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 
-public class DruidRecordProcessor implements RecordProcessor<DruidEvent> {
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+
+@Slf4j
+public class DruidRecordProcessor implements CompilableRecordProcessor<DruidEvent> {
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
     private final DruidConfig config;
     private final RecordParser recordParser;
+    private final RecordPrefilter prefilter;
+    private final QueryRewriter rewriter;
 
     DruidRecordProcessor(DruidConfig config) {
         this.config = config;
         this.recordParser = RecordParserFactory.getByName(config.parser());
+        this.prefilter = new RecordPrefilter(config.filter());
+        this.rewriter = new QueryRewriter(config.rename(), config.replace(), config.context());
     }
 
     @Override
@@ -24,18 +37,77 @@ public class DruidRecordProcessor implements RecordProcessor<DruidEvent> {
         return recordParser.parse(record);
     }
 
+    @Override
+    public DruidEvent parse(byte[] record, int offset, int length) {
+        return recordParser.parse(record, offset, length);
+    }
+
+    //no stream pipeline per record, a record yields at most one event
+    @Override
+    public void processBatch(List<byte[]> records, ProcessedBatch out) {
+        for (int i = 0; i < records.size(); i++) {
+            byte[] record = records.get(i);
+            DruidEvent event = parse(record, 0, record.length);
+            if (!filter(event)) continue;
+
+            out.add(i, edit(event), this::runFn);
+        }
+    }
+
+    @Override
+    public ByteBuffer payload(DruidEvent event) {
+        return ByteBuffer.wrap(event.getRecord(), event.getQueryOffset(), event.getQueryLength());
+    }
+
+    @Override
+    public DruidEvent restore(long timestampMillis, long responseTimeMs, byte[] payload) {
+        return DruidEvent.builder()
+                .startTime(Instant.ofEpochMilli(timestampMillis))
+                .responseTime(responseTimeMs)
+                .record(payload)
+                .queryOffset(0)
+                .queryLength(payload.length)
+                .build();
+    }
+
+    @Override
+    public boolean prefilter(byte[] record, int offset, int length) {
+        return prefilter.test(record, offset, offset + length);
+    }
+
     @Override
     public boolean filter(DruidEvent event) {
         return event != DruidEvent.NON_VALID;
     }
 
+    @Override
+    public DruidEvent edit(DruidEvent event) {
+        if (rewriter.isEmpty()) return event;
+
+        byte[] query;
+        try {
+            query = rewriter.rewrite(event.getRecord(), event.getQueryOffset(), event.getQueryLength());
+        } catch (Exception e) {
+            log.warn("Failed to rewrite query {}, sending it as is", event.getQuery(), e);
+            return event;
+        }
+
+        return DruidEvent.builder()
+                .startTime(event.getStartTime())
+                .responseTime(event.getResponseTime())
+                .record(query)
+                .queryOffset(0)
+                .queryLength(query.length)
+                .build();
+    }
+
     @Override
     public Request runFn(DruidEvent event) {
         return new Request.Builder()
                 .url(config.url())
                 .header("User-Agent", "Http Load Test")
 //              .header("Accept-Encoding", "gzip") <- added automatically and the gzip'd response will be ungzipped transparently
-                .post(RequestBody.create(event.getQuery(), JSON))
+                .post(RequestBody.create(event.getRecord(), JSON, event.getQueryOffset(), event.getQueryLength()))
                 .build();
     }
 }
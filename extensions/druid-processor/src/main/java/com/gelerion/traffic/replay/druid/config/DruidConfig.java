@@ -6,5 +6,7 @@ public interface DruidConfig {
     String url();
     String parser();
     List<String> rename();
+    List<String> replace();
+    List<String> context();
     List<String> filter();
 }
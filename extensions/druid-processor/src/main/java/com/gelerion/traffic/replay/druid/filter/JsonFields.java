@@ -0,0 +1,101 @@
+package com.gelerion.traffic.replay.druid.filter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Locates string values of JSON fields in raw bytes without parsing the document.
+ * The first occurrence of the key wins, for a druid query that is the top level field
+ */
+final class JsonFields {
+    private static final int NOT_FOUND = -1;
+    private static final byte[] NAME_KEY = quoted("name");
+
+    private JsonFields() {
+    }
+
+    /**
+     * A string value is returned as is, for an object value (e.g. a table data source) its "name" string is used
+     *
+     * @return start and end of the value without the quotes, or null if there is no such string
+     */
+    static int[] stringValue(byte[] record, int from, int to, byte[] quotedKey) {
+        int position = valueStart(record, from, to, quotedKey);
+        if (position == NOT_FOUND) return null;
+
+        if (record[position] == '{') {
+            int objectEnd = objectEnd(record, position, to);
+            position = valueStart(record, position + 1, objectEnd, NAME_KEY);
+            if (position == NOT_FOUND) return null;
+        }
+        if (record[position] != '"') return null;
+
+        int start = position + 1;
+        int end = stringEnd(record, start, to);
+        return end == NOT_FOUND ? null : new int[]{start, end};
+    }
+
+    static byte[] quoted(String key) {
+        return ("\"" + key + "\"").getBytes(UTF_8);
+    }
+
+    static int indexOf(byte[] record, byte[] value, int from, int to) {
+        outer:
+        for (int i = from; i <= to - value.length; i++) {
+            for (int j = 0; j < value.length; j++) {
+                if (record[i + j] != value[j]) continue outer;
+            }
+            return i;
+        }
+        return NOT_FOUND;
+    }
+
+    //first byte of the value of the key, skips occurrences of the key text that are values themselves
+    private static int valueStart(byte[] record, int from, int to, byte[] quotedKey) {
+        int position = from;
+        while ((position = indexOf(record, quotedKey, position, to)) != NOT_FOUND) {
+            position = skipWhitespace(record, position + quotedKey.length, to);
+            if (position < to && record[position] == ':') {
+                position = skipWhitespace(record, position + 1, to);
+                return position < to ? position : NOT_FOUND;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private static int stringEnd(byte[] record, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (record[i] == '\\') {
+                i++; //escaped character
+            } else if (record[i] == '"') {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    //end of the object starting at the brace, strings are skipped so braces inside them don't count
+    private static int objectEnd(byte[] record, int from, int to) {
+        int depth = 0;
+        for (int i = from; i < to; i++) {
+            byte b = record[i];
+            if (b == '"') {
+                i = stringEnd(record, i + 1, to);
+                if (i == NOT_FOUND) return to;
+            } else if (b == '{') {
+                depth++;
+            } else if (b == '}' && --depth == 0) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int skipWhitespace(byte[] record, int from, int to) {
+        int position = from;
+        while (position < to && (record[position] == ' ' || record[position] == '\t'
+                || record[position] == '\n' || record[position] == '\r')) {
+            position++;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,136 @@
+package com.gelerion.traffic.replay.druid.filter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The druid.filter rules, matched against the raw record before it is parsed:
+ *
+ *   field=value  -- the string value of the json field equals the value, e.g. dataSource=wikipedia
+ *   field~regex  -- the regex is found in the string value of the json field, e.g. queryType~^(topN|timeseries)$
+ *   text         -- the text occurs anywhere in the record
+ *
+ * Rules of the same field are alternatives, a record passes if it satisfies every field. All the substring rules
+ * count as a single field. A table data source matches by its name. No rules - everything passes
+ */
+@Slf4j
+public class RecordPrefilter {
+    private static final String SUBSTRING = "";
+
+    private final Predicate[][] fields;
+
+    public RecordPrefilter(List<String> rules) {
+        Map<String, List<Predicate>> byField = new LinkedHashMap<>();
+        for (String rule : rules) {
+            int equals = rule.indexOf('=');
+            int tilde = rule.indexOf('~');
+            if (equals > 0 && (tilde < 0 || equals < tilde)) {
+                String field = rule.substring(0, equals).trim();
+                byField.computeIfAbsent(field, it -> new ArrayList<>())
+                        .add(new FieldEquals(field, rule.substring(equals + 1).trim()));
+            } else if (tilde > 0) {
+                String field = rule.substring(0, tilde).trim();
+                byField.computeIfAbsent(field, it -> new ArrayList<>())
+                        .add(new FieldMatches(field, rule.substring(tilde + 1).trim()));
+            } else {
+                byField.computeIfAbsent(SUBSTRING, it -> new ArrayList<>()).add(new Contains(rule));
+            }
+        }
+
+        this.fields = byField.values().stream()
+                .map(predicates -> predicates.toArray(new Predicate[0]))
+                .toArray(Predicate[][]::new);
+        if (!rules.isEmpty()) log.info("Druid prefilter -- {}", byField);
+    }
+
+    public boolean test(byte[] record, int from, int to) {
+        for (Predicate[] alternatives : fields) {
+            if (!anyMatch(alternatives, record, from, to)) return false;
+        }
+        return true;
+    }
+
+    private static boolean anyMatch(Predicate[] alternatives, byte[] record, int from, int to) {
+        for (Predicate predicate : alternatives) {
+            if (predicate.test(record, from, to)) return true;
+        }
+        return false;
+    }
+
+    private interface Predicate {
+        boolean test(byte[] record, int from, int to);
+    }
+
+    private static class FieldEquals implements Predicate {
+        private final String rule;
+        private final byte[] key;
+        private final byte[] value;
+
+        FieldEquals(String field, String value) {
+            this.rule = field + "=" + value;
+            this.key = JsonFields.quoted(field);
+            this.value = value.getBytes(UTF_8);
+        }
+
+        @Override
+        public boolean test(byte[] record, int from, int to) {
+            int[] found = JsonFields.stringValue(record, from, to, key);
+            return found != null && Arrays.equals(record, found[0], found[1], value, 0, value.length);
+        }
+
+        @Override
+        public String toString() {
+            return rule;
+        }
+    }
+
+    private static class FieldMatches implements Predicate {
+        private final String rule;
+        private final byte[] key;
+        private final Pattern pattern;
+
+        FieldMatches(String field, String regex) {
+            this.rule = field + "~" + regex;
+            this.key = JsonFields.quoted(field);
+            this.pattern = Pattern.compile(regex);
+        }
+
+        @Override
+        public boolean test(byte[] record, int from, int to) {
+            int[] found = JsonFields.stringValue(record, from, to, key);
+            //only the value is decoded
+            return found != null && pattern.matcher(new String(record, found[0], found[1] - found[0], UTF_8)).find();
+        }
+
+        @Override
+        public String toString() {
+            return rule;
+        }
+    }
+
+    private static class Contains implements Predicate {
+        private final byte[] text;
+
+        Contains(String text) {
+            this.text = text.getBytes(UTF_8);
+        }
+
+        @Override
+        public boolean test(byte[] record, int from, int to) {
+            return JsonFields.indexOf(record, text, from, to) >= 0;
+        }
+
+        @Override
+        public String toString() {
+            return "*" + new String(text, UTF_8) + "*";
+        }
+    }
+}
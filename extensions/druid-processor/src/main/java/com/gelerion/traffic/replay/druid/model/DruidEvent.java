@@ -3,18 +3,29 @@ package com.gelerion.traffic.replay.druid.model;
 import com.gelerion.traffic.replay.api.event.Event;
 import lombok.Builder;
 import lombok.Data;
+import lombok.ToString;
 
 import java.time.Instant;
 import java.util.Optional;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 @Data
 @Builder
 public class DruidEvent implements Event {
-    public static final DruidEvent NON_VALID = new DruidEvent(Instant.MIN, -1, "");
+    public static final DruidEvent NON_VALID = new DruidEvent(Instant.MIN, -1, new byte[0], 0, 0);
 
     Instant startTime;
     long responseTime;
-    String query;
+    //the query is a slice of the raw record, it is posted as is without being decoded
+    @ToString.Exclude
+    byte[] record;
+    int queryOffset;
+    int queryLength;
+
+    public String getQuery() {
+        return new String(record, queryOffset, queryLength, UTF_8);
+    }
 
     @Override
     public Instant timestamp() {
@@ -0,0 +1,91 @@
+package com.gelerion.traffic.replay.druid.parser;
+
+import java.time.Instant;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * UTC timestamps as druid writes them, yyyy-MM-ddTHH:mm:ss[.fraction]Z, parsed without a formatter.
+ * Anything else, e.g. an offset instead of Z, goes through {@link Instant#parse(CharSequence)}
+ */
+final class IsoTimestamps {
+    private static final int SECONDS_PER_DAY = 86_400;
+
+    private IsoTimestamps() {
+    }
+
+    static Instant parse(byte[] bytes, int from, int to) {
+        int length = to - from;
+        if (length < 20 || bytes[to - 1] != 'Z'
+                || bytes[from + 4] != '-' || bytes[from + 7] != '-' || bytes[from + 10] != 'T'
+                || bytes[from + 13] != ':' || bytes[from + 16] != ':') {
+            return slowPath(bytes, from, to);
+        }
+
+        int year = digits(bytes, from, 4);
+        int month = digits(bytes, from + 5, 2);
+        int day = digits(bytes, from + 8, 2);
+        int hour = digits(bytes, from + 11, 2);
+        int minute = digits(bytes, from + 14, 2);
+        int second = digits(bytes, from + 17, 2);
+
+        int nanos = 0;
+        int fractionEnd = to - 1;
+        if (fractionEnd > from + 19) {
+            int fractionDigits = fractionEnd - from - 20;
+            if (bytes[from + 19] != '.' || fractionDigits < 1 || fractionDigits > 9) {
+                return slowPath(bytes, from, to);
+            }
+            nanos = digits(bytes, from + 20, fractionDigits);
+            for (int i = fractionDigits; i < 9; i++) nanos *= 10;
+        }
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || nanos < 0) {
+            return slowPath(bytes, from, to);
+        }
+
+        long epochSecond = epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+        return Instant.ofEpochSecond(epochSecond, nanos);
+    }
+
+    //-1 when not all of them are digits, which fails the range checks
+    private static int digits(byte[] bytes, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    //days since 1970-01-01 of a proleptic gregorian date
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static Instant slowPath(byte[] bytes, int from, int to) {
+        return Instant.parse(new String(bytes, from, to - from, US_ASCII));
+    }
+}
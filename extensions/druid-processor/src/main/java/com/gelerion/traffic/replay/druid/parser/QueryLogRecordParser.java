@@ -1,48 +1,114 @@
 package com.gelerion.traffic.replay.druid.parser;
 
 import com.gelerion.traffic.replay.druid.model.DruidEvent;
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.Type;
 import java.time.Instant;
-import java.util.Map;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * timestamp \t ip \t query \t query meta
+ *
+ * Single pass over the bytes: a tab byte never occurs inside a multi-byte UTF-8 sequence so the fields are found
+ * without decoding, query/time is read straight out of the meta and the query stays a slice of the record.
+ */
 @Slf4j
 public class QueryLogRecordParser implements RecordParser {
     public final static String NAME = "druid-query-log";
-    private final static Type MAP_TYPE = new TypeToken<Map<String, String>>(){}.getType();
-    private final static Gson GSON = new Gson();
+    private final static byte TAB = '\t';
+    private final static byte[] QUERY_TIME_KEY = "\"query/time\"".getBytes(UTF_8);
 
     public QueryLogRecordParser() {}
 
-
-    public DruidEvent parse(String record) {
+    @Override
+    public DruidEvent parse(byte[] record, int offset, int length) {
         try {
-            return doParse(record);
+            return doParse(record, offset, offset + length);
         } catch (Exception e) {
-            log.warn("Failed to parse record {}", record, e);
+            log.warn("Failed to parse record {}", new String(record, offset, length, UTF_8), e);
             return DruidEvent.NON_VALID;
         }
     }
 
-    private DruidEvent doParse(String record) {
-        String[] split = record.split("\t");
-
-        String timestamp = split[0];
-        String ip = split[1];
-        String query = split[2];
-        String queryMeta = split[3];
+    private DruidEvent doParse(byte[] record, int from, int to) {
+        int timestampEnd = indexOfTab(record, from, to);
+        int ipEnd = indexOfTab(record, timestampEnd + 1, to);
+        int queryEnd = indexOfTab(record, ipEnd + 1, to);
+        int metaEnd = indexOf(record, TAB, queryEnd + 1, to);
+        if (metaEnd < 0) metaEnd = to;
 
-        Map<String, String> meta = GSON.fromJson(queryMeta, MAP_TYPE);
-        long responseTime = Long.parseLong(meta.get("query/time"));
-        Instant startTime = Instant.parse(timestamp);
+        long responseTime = queryTime(record, queryEnd + 1, metaEnd);
+        Instant startTime = IsoTimestamps.parse(record, from, timestampEnd);
 
         return DruidEvent.builder()
                 .responseTime(responseTime)
                 .startTime(startTime)
-                .query(query)
+                .record(record)
+                .queryOffset(ipEnd + 1)
+                .queryLength(queryEnd - ipEnd - 1)
                 .build();
     }
+
+    //the value of the "query/time" key, a number or a quoted number
+    private static long queryTime(byte[] record, int from, int to) {
+        int position = from;
+        while ((position = indexOf(record, QUERY_TIME_KEY, position, to)) >= 0) {
+            position = skipWhitespace(record, position + QUERY_TIME_KEY.length, to);
+            if (position < to && record[position] == ':') {
+                position = skipWhitespace(record, position + 1, to);
+                if (position < to && record[position] == '"') position++;
+                return parseLong(record, position, to);
+            }
+            //the text of a value, not the key
+        }
+        throw new IllegalArgumentException("No query/time in the query meta");
+    }
+
+    private static long parseLong(byte[] record, int from, int to) {
+        long value = 0;
+        int position = from;
+        while (position < to && record[position] >= '0' && record[position] <= '9') {
+            value = value * 10 + (record[position++] - '0');
+        }
+        if (position == from) {
+            throw new NumberFormatException("Expected a number at " + from);
+        }
+        return value;
+    }
+
+    private static int skipWhitespace(byte[] record, int from, int to) {
+        int position = from;
+        while (position < to && (record[position] == ' ' || record[position] == '\t'
+                || record[position] == '\n' || record[position] == '\r')) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int indexOfTab(byte[] record, int from, int to) {
+        int index = indexOf(record, TAB, from, to);
+        if (index < 0) {
+            throw new IllegalArgumentException("Expected a tab separated field at " + from);
+        }
+        return index;
+    }
+
+    private static int indexOf(byte[] record, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (record[i] == value) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] record, byte[] value, int from, int to) {
+        outer:
+        for (int i = from; i <= to - value.length; i++) {
+            for (int j = 0; j < value.length; j++) {
+                if (record[i + j] != value[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
 }
@@ -2,7 +2,14 @@ package com.gelerion.traffic.replay.druid.parser;
 
 import com.gelerion.traffic.replay.druid.model.DruidEvent;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 //generify / dynamic population by name
 public interface RecordParser {
-    DruidEvent parse(String record);
+    DruidEvent parse(byte[] record, int offset, int length);
+
+    default DruidEvent parse(String record) {
+        byte[] bytes = record.getBytes(UTF_8);
+        return parse(bytes, 0, bytes.length);
+    }
 }
@@ -0,0 +1,216 @@
+package com.gelerion.traffic.replay.druid.rewrite;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Rewrites druid queries, the rules are compiled into hash lookups once so the cost per query doesn't grow
+ * with their number. The query is streamed from the reader to the writer, no tree is built:
+ *
+ *   rename   -- "a -> b", data source a becomes b, table data sources by their name, union members included
+ *   replace  -- "field: a -> b", the value a of the json field becomes b, at any depth
+ *   context  -- "key=value", set in the context of the top level query, the value is a json literal
+ *               (true, 10, "x") or a plain string
+ */
+@Slf4j
+public class QueryRewriter {
+    private static final String DATA_SOURCE = "dataSource";
+    private static final String DATA_SOURCES = "dataSources"; //members of a union data source
+    private static final String NAME = "name";
+    private static final String CONTEXT = "context";
+    private static final String ARROW = "->";
+    private static final Pattern JSON_NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?");
+
+    private final Map<String, String> dataSources = new HashMap<>();
+    private final Map<String, Map<String, String>> replacements = new HashMap<>();
+    private final Map<String, String> context = new LinkedHashMap<>(); //key -> json literal
+
+    public QueryRewriter(List<String> rename, List<String> replace, List<String> context) {
+        for (String rule : rename) {
+            String[] fromTo = split(rule, ARROW);
+            dataSources.put(fromTo[0], fromTo[1]);
+        }
+        for (String rule : replace) {
+            String[] fieldAndValues = split(rule, ":");
+            String[] fromTo = split(fieldAndValues[1], ARROW);
+            replacements.computeIfAbsent(fieldAndValues[0], it -> new HashMap<>()).put(fromTo[0], fromTo[1]);
+        }
+        for (String rule : context) {
+            String[] keyValue = split(rule, "=");
+            this.context.put(keyValue[0], literal(keyValue[1]));
+        }
+
+        if (!isEmpty()) {
+            log.info("Druid query rewrite -- rename: {}, replace: {}, context: {}", dataSources, replacements, this.context);
+        }
+    }
+
+    public boolean isEmpty() {
+        return dataSources.isEmpty() && replacements.isEmpty() && context.isEmpty();
+    }
+
+    /**
+     * @return the rewritten query as UTF-8
+     */
+    @SneakyThrows(IOException.class)
+    public byte[] rewrite(byte[] query, int offset, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 64);
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(query, offset, length), UTF_8));
+             JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, UTF_8))) {
+            writer.setSerializeNulls(true);
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                copyObject(reader, writer, null, true);
+            } else {
+                copyValue(reader, writer, null, null);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private void copyObject(JsonReader reader, JsonWriter writer, String parentField, boolean topLevel) throws IOException {
+        reader.beginObject();
+        writer.beginObject();
+        boolean contextWritten = false;
+
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            writer.name(field);
+
+            if (topLevel && field.equals(CONTEXT) && !context.isEmpty()) {
+                if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    copyContext(reader, writer);
+                } else {
+                    //"context": null, nothing to keep
+                    reader.skipValue();
+                    writer.beginObject();
+                    writeInjectedContext(writer);
+                    writer.endObject();
+                }
+                contextWritten = true;
+            } else {
+                copyValue(reader, writer, field, parentField);
+            }
+        }
+
+        if (topLevel && !contextWritten && !context.isEmpty()) {
+            writer.name(CONTEXT);
+            writer.beginObject();
+            writeInjectedContext(writer);
+            writer.endObject();
+        }
+
+        reader.endObject();
+        writer.endObject();
+    }
+
+    private void copyValue(JsonReader reader, JsonWriter writer, String field, String parentField) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                copyObject(reader, writer, field, false);
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                //elements are matched as values of the array's field, e.g. the members of "dataSources"
+                while (reader.hasNext()) copyValue(reader, writer, field, parentField);
+                reader.endArray();
+                writer.endArray();
+                break;
+            case STRING:
+                writer.value(replaced(field, parentField, reader.nextString()));
+                break;
+            case NUMBER:
+                String number = reader.nextString();
+                String replacement = replaced(field, parentField, number);
+                writer.jsonValue(replacement.equals(number) ? number : literal(replacement));
+                break;
+            case BOOLEAN:
+                String bool = String.valueOf(reader.nextBoolean());
+                String replacedBool = replaced(field, parentField, bool);
+                writer.jsonValue(replacedBool.equals(bool) ? bool : literal(replacedBool));
+                break;
+            case NULL:
+                reader.nextNull();
+                writer.nullValue();
+                break;
+            default:
+                throw new IllegalStateException("Unexpected " + reader.peek() + " at " + reader.getPath());
+        }
+    }
+
+    //existing entries are kept unless injected
+    private void copyContext(JsonReader reader, JsonWriter writer) throws IOException {
+        reader.beginObject();
+        writer.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (context.containsKey(key)) {
+                reader.skipValue();
+                continue;
+            }
+            writer.name(key);
+            copyValue(reader, writer, key, CONTEXT);
+        }
+        writeInjectedContext(writer);
+        reader.endObject();
+        writer.endObject();
+    }
+
+    private void writeInjectedContext(JsonWriter writer) throws IOException {
+        for (Map.Entry<String, String> entry : context.entrySet()) {
+            writer.name(entry.getKey());
+            writer.jsonValue(entry.getValue());
+        }
+    }
+
+    private String replaced(String field, String parentField, String value) {
+        if (field != null) {
+            if (!dataSources.isEmpty() && (isDataSource(field) || field.equals(NAME) && isDataSource(parentField))) {
+                value = dataSources.getOrDefault(value, value);
+            }
+
+            Map<String, String> fieldReplacements = replacements.get(field);
+            if (fieldReplacements != null) {
+                value = fieldReplacements.getOrDefault(value, value);
+            }
+        }
+        return value;
+    }
+
+    private static boolean isDataSource(String field) {
+        return DATA_SOURCE.equals(field) || DATA_SOURCES.equals(field);
+    }
+
+    private static String[] split(String rule, String separator) {
+        int index = rule.indexOf(separator);
+        if (index <= 0) {
+            throw new IllegalArgumentException("Malformed rewrite rule '" + rule + "', expected a '" + separator + "'");
+        }
+        return new String[]{rule.substring(0, index).trim(), rule.substring(index + separator.length()).trim()};
+    }
+
+    //a json literal stays as is, anything else becomes a string
+    private static String literal(String value) {
+        if (value.equals("true") || value.equals("false") || value.equals("null") || value.startsWith("\"")
+                || JSON_NUMBER.matcher(value).matches()) {
+            return value;
+        }
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
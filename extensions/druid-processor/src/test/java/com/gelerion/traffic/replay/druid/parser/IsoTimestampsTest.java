@@ -0,0 +1,82 @@
+package com.gelerion.traffic.replay.druid.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IsoTimestampsTest {
+
+    @Test
+    void parsesUtcTimestamps() {
+        assertParsedLikeInstantParse("2019-10-28T13:45:12.345Z");
+        assertParsedLikeInstantParse("2019-10-28T13:45:12Z");
+        assertParsedLikeInstantParse("1970-01-01T00:00:00Z");
+        assertParsedLikeInstantParse("1969-12-31T23:59:59.999Z");
+        assertParsedLikeInstantParse("1900-03-01T00:00:00Z");
+    }
+
+    @Test
+    void parsesLeapDays() {
+        assertParsedLikeInstantParse("2020-02-29T23:59:59Z");
+        assertParsedLikeInstantParse("2000-02-29T00:00:00Z");
+    }
+
+    @Test
+    void parsesFractionsOfAnyPrecision() {
+        assertParsedLikeInstantParse("2019-10-28T00:00:00.1Z");
+        assertParsedLikeInstantParse("2019-10-28T00:00:00.12Z");
+        assertParsedLikeInstantParse("2019-10-28T00:00:00.123456Z");
+        assertParsedLikeInstantParse("2019-10-28T00:00:00.123456789Z");
+    }
+
+    @Test
+    void parsesOffsetsThroughTheSlowPath() {
+        assertEquals(OffsetDateTime.parse("2019-10-28T02:00:00+02:00").toInstant(), parse("2019-10-28T02:00:00+02:00"));
+        assertEquals(OffsetDateTime.parse("2019-10-28T02:00:00.5-05:30").toInstant(), parse("2019-10-28T02:00:00.5-05:30"));
+    }
+
+    @Test
+    void parsesTheSliceOnly() {
+        byte[] record = "x\t2019-10-28T13:45:12.345Z\ty".getBytes(US_ASCII);
+        assertEquals(Instant.parse("2019-10-28T13:45:12.345Z"), IsoTimestamps.parse(record, 2, 26));
+    }
+
+    @Test
+    void rejectsMalformedTimestamps() {
+        assertThrows(DateTimeException.class, () -> parse("2019-02-30T00:00:00Z"));
+        assertThrows(DateTimeException.class, () -> parse("2019-02-29T00:00:00Z"));
+        assertThrows(DateTimeException.class, () -> parse("2019-13-01T00:00:00Z"));
+        assertThrows(DateTimeException.class, () -> parse("2019-10-28T00:60:00Z"));
+        assertThrows(DateTimeException.class, () -> parse("2019-1O-28T00:00:00Z"));
+        assertThrows(DateTimeException.class, () -> parse("2019-10-28T00:00:00.1234567891Z"));
+        assertThrows(DateTimeException.class, () -> parse("2019-10-28 00:00:00Z"));
+        assertThrows(DateTimeException.class, () -> parse("not a timestamp"));
+    }
+
+    @Test
+    void agreesWithInstantParseOnRandomInstants() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            //1900 to 2100, with and without a fraction
+            long seconds = -2_208_988_800L + (long) (random.nextDouble() * 6_311_433_600L);
+            int nanos = random.nextInt(4) == 0 ? 0 : random.nextInt(1_000_000_000);
+            assertParsedLikeInstantParse(Instant.ofEpochSecond(seconds, nanos).toString());
+        }
+    }
+
+    private static void assertParsedLikeInstantParse(String timestamp) {
+        assertEquals(Instant.parse(timestamp), parse(timestamp), timestamp);
+    }
+
+    private static Instant parse(String timestamp) {
+        byte[] bytes = timestamp.getBytes(US_ASCII);
+        return IsoTimestamps.parse(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,101 @@
+package com.gelerion.traffic.replay.druid.parser;
+
+import com.gelerion.traffic.replay.druid.model.DruidEvent;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Type;
+import java.time.Instant;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class QueryLogRecordParserTest {
+    private static final String QUERY = "{\"queryType\":\"topN\",\"dataSource\":\"wikipedia\",\"filter\":\"\u00e9\\t\u00fc\"}";
+
+    private final QueryLogRecordParser parser = new QueryLogRecordParser();
+
+    @Test
+    void parsesAllFields() {
+        DruidEvent event = parser.parse(record("2019-10-28T13:45:12.345Z", QUERY, "{\"query/time\":\"123\",\"success\":\"true\"}"));
+
+        assertEquals(Instant.parse("2019-10-28T13:45:12.345Z"), event.getStartTime());
+        assertEquals(123, event.getResponseTime());
+        assertEquals(QUERY, event.getQuery());
+    }
+
+    @Test
+    void keepsTheQueryAsASliceOfTheRecord() {
+        byte[] line = record("2019-10-28T13:45:12Z", QUERY, "{\"query/time\":7}").getBytes(UTF_8);
+        byte[] buffer = new byte[line.length + 10];
+        System.arraycopy(line, 0, buffer, 5, line.length);
+
+        DruidEvent event = parser.parse(buffer, 5, line.length);
+
+        assertSame(buffer, event.getRecord());
+        assertEquals(QUERY, event.getQuery());
+        assertEquals(7, event.getResponseTime());
+    }
+
+    @Test
+    void readsQueryTimeAsANumberOrAString() {
+        assertEquals(45, parser.parse(record("2019-10-28T00:00:00Z", QUERY, "{ \"query/time\" : 45 }")).getResponseTime());
+        assertEquals(45, parser.parse(record("2019-10-28T00:00:00Z", QUERY, "{\"query/time\":\"45\"}")).getResponseTime());
+        //the key text inside a value doesn't count
+        assertEquals(3, parser.parse(record("2019-10-28T00:00:00Z", QUERY,
+                "{\"note\":\"query/time\",\"query/time\":3}")).getResponseTime());
+    }
+
+    @Test
+    void malformedRecordsAreNotValid() {
+        assertSame(DruidEvent.NON_VALID, parser.parse("2019-10-28T00:00:00Z\t1.1.1.1"));
+        assertSame(DruidEvent.NON_VALID, parser.parse(record("2019-10-28T00:00:00Z", QUERY, "{\"success\":\"true\"}")));
+        assertSame(DruidEvent.NON_VALID, parser.parse(record("2019-10-28T00:00:00Z", QUERY, "{\"query/time\":\"\"}")));
+        assertSame(DruidEvent.NON_VALID, parser.parse(record("yesterday", QUERY, "{\"query/time\":1}")));
+    }
+
+    @Test
+    void agreesWithTheSplittingParser() {
+        String[] records = {
+                record("2019-10-28T13:45:12.345Z", QUERY, "{\"query/time\":\"123\",\"query/bytes\":\"99\"}"),
+                record("2019-10-28T02:00:00+02:00", "{}", "{\"query/time\":\"0\"}"),
+                record("2020-02-29T23:59:59.999999Z", "{\"dataSource\":\"\u00df\"}", "{\"success\":\"true\",\"query/time\":\"88\"}")
+        };
+
+        for (String record : records) {
+            DruidEvent expected = SplittingParser.parse(record);
+            DruidEvent actual = parser.parse(record);
+
+            assertEquals(expected.getStartTime(), actual.getStartTime(), record);
+            assertEquals(expected.getResponseTime(), actual.getResponseTime(), record);
+            assertEquals(expected.getQuery(), actual.getQuery(), record);
+        }
+    }
+
+    private static String record(String timestamp, String query, String meta) {
+        return timestamp + "\t10.0.0.1\t" + query + "\t" + meta;
+    }
+
+    //the parser before the single pass one, split on tabs and a gson map of the meta
+    private static class SplittingParser {
+        private static final Type MAP_TYPE = new TypeToken<Map<String, String>>(){}.getType();
+        private static final Gson GSON = new Gson();
+
+        static DruidEvent parse(String record) {
+            String[] split = record.split("\t");
+            Map<String, String> meta = GSON.fromJson(split[3], MAP_TYPE);
+            byte[] query = split[2].getBytes(UTF_8);
+
+            return DruidEvent.builder()
+                    .startTime(Instant.parse(split[0]))
+                    .responseTime(Long.parseLong(meta.get("query/time")))
+                    .record(query)
+                    .queryOffset(0)
+                    .queryLength(query.length)
+                    .build();
+        }
+    }
+}
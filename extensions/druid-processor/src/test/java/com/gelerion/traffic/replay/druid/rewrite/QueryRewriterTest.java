@@ -0,0 +1,102 @@
+package com.gelerion.traffic.replay.druid.rewrite;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryRewriterTest {
+
+    @Test
+    void renamesStringDataSources() {
+        QueryRewriter rewriter = new QueryRewriter(List.of("wikipedia -> wikipedia_shadow"), List.of(), List.of());
+
+        assertEquals("{\"queryType\":\"topN\",\"dataSource\":\"wikipedia_shadow\",\"threshold\":5}",
+                rewrite(rewriter, "{\"queryType\":\"topN\",\"dataSource\":\"wikipedia\",\"threshold\":5}"));
+        //other data sources and other fields with the same value stay
+        assertEquals("{\"dataSource\":\"twitter\",\"dimension\":\"wikipedia\"}",
+                rewrite(rewriter, "{\"dataSource\":\"twitter\",\"dimension\":\"wikipedia\"}"));
+    }
+
+    @Test
+    void renamesTableDataSources() {
+        QueryRewriter rewriter = new QueryRewriter(List.of("wikipedia -> wikipedia_shadow"), List.of(), List.of());
+
+        assertEquals("{\"dataSource\":{\"type\":\"table\",\"name\":\"wikipedia_shadow\"},\"filter\":{\"name\":\"wikipedia\"}}",
+                rewrite(rewriter, "{\"dataSource\":{\"type\":\"table\",\"name\":\"wikipedia\"},\"filter\":{\"name\":\"wikipedia\"}}"));
+    }
+
+    @Test
+    void renamesUnionMembers() {
+        QueryRewriter rewriter = new QueryRewriter(List.of("a -> a_shadow", "c -> c_shadow"), List.of(), List.of());
+
+        assertEquals("{\"dataSource\":{\"type\":\"union\",\"dataSources\":[\"a_shadow\",\"b\",\"c_shadow\"]}}",
+                rewrite(rewriter, "{\"dataSource\":{\"type\":\"union\",\"dataSources\":[\"a\",\"b\",\"c\"]}}"));
+    }
+
+    @Test
+    void replacesStringNumberAndBooleanValues() {
+        QueryRewriter rewriter = new QueryRewriter(List.of(),
+                List.of("granularity: minute -> hour", "threshold: 1000 -> 10", "useCache: true -> false",
+                        "limit: 5 -> unlimited"),
+                List.of());
+
+        assertEquals("{\"granularity\":\"hour\",\"threshold\":10,\"filter\":{\"useCache\":false},\"limit\":\"unlimited\"}",
+                rewrite(rewriter, "{\"granularity\":\"minute\",\"threshold\":1000,\"filter\":{\"useCache\":true},\"limit\":5}"));
+        //only the matching values are replaced, numbers are kept as written
+        assertEquals("{\"granularity\":\"day\",\"threshold\":1.5e3,\"useCache\":false}",
+                rewrite(rewriter, "{\"granularity\":\"day\",\"threshold\":1.5e3,\"useCache\":false}"));
+    }
+
+    @Test
+    void injectsContextIntoAnExistingContext() {
+        QueryRewriter rewriter = new QueryRewriter(List.of(), List.of(), List.of("priority=10", "useCache=false", "lane=low"));
+
+        assertEquals("{\"queryType\":\"scan\",\"context\":{\"timeout\":1000,\"priority\":10,\"useCache\":false,\"lane\":\"low\"},\"limit\":1}",
+                rewrite(rewriter, "{\"queryType\":\"scan\",\"context\":{\"timeout\":1000,\"priority\":1},\"limit\":1}"));
+    }
+
+    @Test
+    void injectsContextWhenThereIsNone() {
+        QueryRewriter rewriter = new QueryRewriter(List.of(), List.of(), List.of("priority=10"));
+
+        assertEquals("{\"queryType\":\"scan\",\"limit\":1,\"context\":{\"priority\":10}}",
+                rewrite(rewriter, "{\"queryType\":\"scan\",\"limit\":1}"));
+        //the context of a nested query is left alone
+        assertEquals("{\"dataSource\":{\"type\":\"query\",\"query\":{\"context\":{\"priority\":1}}},\"context\":{\"priority\":10}}",
+                rewrite(rewriter, "{\"dataSource\":{\"type\":\"query\",\"query\":{\"context\":{\"priority\":1}}}}"));
+    }
+
+    @Test
+    void replacesANullContext() {
+        QueryRewriter rewriter = new QueryRewriter(List.of(), List.of(), List.of("priority=10"));
+
+        assertEquals("{\"queryType\":\"scan\",\"context\":{\"priority\":10},\"limit\":1}",
+                rewrite(rewriter, "{\"queryType\":\"scan\",\"context\":null,\"limit\":1}"));
+    }
+
+    @Test
+    void keepsTheQueryWithoutRules() {
+        QueryRewriter rewriter = new QueryRewriter(List.of(), List.of(), List.of());
+
+        assertTrue(rewriter.isEmpty());
+        assertEquals("{\"dataSource\":\"wikipedia\",\"context\":null,\"intervals\":[\"2019-10-28/2019-10-29\"]}",
+                rewrite(rewriter, "{\"dataSource\":\"wikipedia\",\"context\":null,\"intervals\":[\"2019-10-28/2019-10-29\"]}"));
+    }
+
+    @Test
+    void rejectsMalformedRules() {
+        assertThrows(IllegalArgumentException.class, () -> new QueryRewriter(List.of("wikipedia"), List.of(), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> new QueryRewriter(List.of(), List.of("threshold 1 -> 2"), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> new QueryRewriter(List.of(), List.of(), List.of("priority")));
+    }
+
+    private static String rewrite(QueryRewriter rewriter, String query) {
+        byte[] bytes = query.getBytes(UTF_8);
+        return new String(rewriter.rewrite(bytes, 0, bytes.length), UTF_8);
+    }
+}
@@ -0,0 +1,40 @@
+package com.gelerion.traffic.replay.api;
+
+import com.gelerion.traffic.replay.api.event.Event;
+import com.gelerion.traffic.replay.api.model.EventAndRequest;
+
+import java.nio.ByteBuffer;
+import java.util.stream.Stream;
+
+/**
+ * A processor whose events can be compiled into replay segments once and restored on every run without parsing.
+ * A segment keeps the timestamp, the response time and the payload of every event
+ */
+public interface CompilableRecordProcessor<E extends Event> extends RecordProcessor<E> {
+
+    /**
+     * Everything {@link #runFn(Event)} needs besides the timestamp and the response time, e.g. the request body
+     */
+    ByteBuffer payload(E event);
+
+    /**
+     * @param responseTimeMs -1 if the event had none
+     */
+    E restore(long timestampMillis, long responseTimeMs, byte[] payload);
+
+    default Stream<EventAndRequest> processCompiled(long timestampMillis, long responseTimeMs, byte[] payload) {
+        return restored(timestampMillis, responseTimeMs, payload)
+                .map(event -> EventAndRequest.of(event, runFn(event)));
+    }
+
+    default Stream<EventAndRequest> processCompiledDeferred(long timestampMillis, long responseTimeMs, byte[] payload) {
+        return restored(timestampMillis, responseTimeMs, payload)
+                .map(event -> EventAndRequest.deferred(event, () -> runFn(event)));
+    }
+
+    private Stream<E> restored(long timestampMillis, long responseTimeMs, byte[] payload) {
+        return Stream.of(restore(timestampMillis, responseTimeMs, payload))
+                .filter(this::filter)
+                .map(this::edit);
+    }
+}
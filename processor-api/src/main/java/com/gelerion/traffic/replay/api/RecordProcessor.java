@@ -2,22 +2,73 @@ package com.gelerion.traffic.replay.api;
 
 import com.gelerion.traffic.replay.api.event.Event;
 import com.gelerion.traffic.replay.api.model.EventAndRequest;
+import com.gelerion.traffic.replay.api.model.ProcessedBatch;
 import okhttp3.Request;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.stream.Stream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 public interface RecordProcessor<E extends Event> {
 
     default Stream<EventAndRequest> process(String record) {
-        return Stream.of(record)
-                .map(this::parse)
-                .filter(this::filter)
-                .map(this::edit)
-                .map(event -> EventAndRequest.of(event, runFn(event)));
+        return toRequests(parse(record));
+    }
+
+    /**
+     * The raw kafka record, processors overriding {@link #parse(byte[], int, int)} never decode it into a String
+     */
+    default Stream<EventAndRequest> process(byte[] record) {
+        return toRequests(parse(record, 0, record.length));
+    }
+
+    default Stream<EventAndRequest> process(ByteBuffer record) {
+        return toRequests(parse(record));
+    }
+
+    /**
+     * Same as {@link #process(String)}, but {@link #runFn(Event)} is invoked only when the request is fired
+     */
+    default Stream<EventAndRequest> processDeferred(String record) {
+        return toDeferredRequests(parse(record));
+    }
+
+    default Stream<EventAndRequest> processDeferred(byte[] record) {
+        return toDeferredRequests(parse(record, 0, record.length));
+    }
+
+    /**
+     * Processes a whole poll batch into the reused output, override to share work across the records of the batch.
+     * Adapts {@link #process(byte[])} by default
+     */
+    default void processBatch(List<byte[]> records, ProcessedBatch out) {
+        for (int i = 0; i < records.size(); i++) {
+            int sourceIndex = i;
+            byte[] record = records.get(i);
+            (out.isDeferred() ? processDeferred(record) : process(record))
+                    .forEach(result -> out.add(sourceIndex, result));
+        }
     }
 
     E parse(String record);
 
+    /**
+     * Decodes the slice by default, override to parse the bytes directly
+     */
+    default E parse(byte[] record, int offset, int length) {
+        return parse(new String(record, offset, length, UTF_8));
+    }
+
+    /**
+     * Cheap check on the raw record, a rejected record is never parsed. Applied by the caller before any of the
+     * process methods
+     */
+    default boolean prefilter(byte[] record, int offset, int length) {
+        return true;
+    }
+
     default boolean filter(E event) {
         return true;
     }
@@ -27,4 +78,28 @@ public interface RecordProcessor<E extends Event> {
     }
 
     Request runFn(E event);
+
+    private E parse(ByteBuffer record) {
+        if (record.hasArray()) {
+            return parse(record.array(), record.arrayOffset() + record.position(), record.remaining());
+        }
+
+        byte[] bytes = new byte[record.remaining()];
+        record.duplicate().get(bytes);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    private Stream<EventAndRequest> toRequests(E parsed) {
+        return edited(parsed).map(event -> EventAndRequest.of(event, runFn(event)));
+    }
+
+    private Stream<EventAndRequest> toDeferredRequests(E parsed) {
+        return edited(parsed).map(event -> EventAndRequest.deferred(event, () -> runFn(event)));
+    }
+
+    private Stream<E> edited(E parsed) {
+        return Stream.of(parsed)
+                .filter(this::filter)
+                .map(this::edit);
+    }
 }
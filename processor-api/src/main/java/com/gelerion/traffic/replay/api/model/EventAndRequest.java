@@ -4,18 +4,29 @@ import com.gelerion.traffic.replay.api.event.Event;
 import okhttp3.Request;
 
 import java.util.Objects;
+import java.util.function.Supplier;
 
 public class EventAndRequest {
     private final Event event;
     private final Request request;
+    private final Supplier<Request> requestFactory;
 
-    private EventAndRequest(Event event, Request request) {
+    private EventAndRequest(Event event, Request request, Supplier<Request> requestFactory) {
         this.event = event;
         this.request = request;
+        this.requestFactory = requestFactory;
     }
 
     public static EventAndRequest of(Event event, Request request) {
-        return new EventAndRequest(event, request);
+        return new EventAndRequest(event, request, null);
+    }
+
+    /**
+     * The request isn't built until {@link #request()} is called, which keeps only the event alive
+     * while the trigger is pending
+     */
+    public static EventAndRequest deferred(Event event, Supplier<Request> requestFactory) {
+        return new EventAndRequest(event, null, requestFactory);
     }
 
     public Event event() {
@@ -23,7 +34,7 @@ public class EventAndRequest {
     }
 
     public Request request() {
-        return this.request;
+        return this.request != null ? this.request : this.requestFactory.get();
     }
 
     @Override
@@ -32,16 +43,17 @@ public class EventAndRequest {
         if (o == null || getClass() != o.getClass()) return false;
         EventAndRequest that = (EventAndRequest) o;
         return Objects.equals(event, that.event) &&
-                Objects.equals(request, that.request);
+                Objects.equals(request, that.request) &&
+                Objects.equals(requestFactory, that.requestFactory);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(event, request);
+        return Objects.hash(event, request, requestFactory);
     }
 
     @Override
     public String toString() {
-        return "EventAndRequest{" + "event=" + event + ", request=" + request + '}';
+        return "EventAndRequest{" + "event=" + event + ", request=" + (request != null ? request : "deferred") + '}';
     }
 }
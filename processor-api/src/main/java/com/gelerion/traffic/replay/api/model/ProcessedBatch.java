@@ -0,0 +1,66 @@
+package com.gelerion.traffic.replay.api.model;
+
+import com.gelerion.traffic.replay.api.event.Event;
+import okhttp3.Request;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Output of {@link com.gelerion.traffic.replay.api.RecordProcessor#processBatch}, reused from batch to batch.
+ * Every result carries the index of the record it came from, a record yields any number of results.
+ * Not thread safe
+ */
+public class ProcessedBatch {
+    private final boolean deferRequests;
+    private EventAndRequest[] results;
+    private int[] sourceIndexes;
+    private int size;
+
+    /**
+     * @param deferRequests build the requests when they are fired rather than when they are added,
+     *                      see {@link EventAndRequest#deferred}
+     */
+    public ProcessedBatch(int initialCapacity, boolean deferRequests) {
+        this.deferRequests = deferRequests;
+        this.results = new EventAndRequest[Math.max(initialCapacity, 1)];
+        this.sourceIndexes = new int[results.length];
+    }
+
+    public <E extends Event> void add(int sourceIndex, E event, Function<E, Request> runFn) {
+        add(sourceIndex, deferRequests
+                ? EventAndRequest.deferred(event, () -> runFn.apply(event))
+                : EventAndRequest.of(event, runFn.apply(event)));
+    }
+
+    public void add(int sourceIndex, EventAndRequest result) {
+        if (size == results.length) {
+            results = Arrays.copyOf(results, size * 2);
+            sourceIndexes = Arrays.copyOf(sourceIndexes, size * 2);
+        }
+        results[size] = result;
+        sourceIndexes[size] = sourceIndex;
+        size++;
+    }
+
+    public boolean isDeferred() {
+        return deferRequests;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public EventAndRequest result(int index) {
+        return results[index];
+    }
+
+    public int sourceIndex(int index) {
+        return sourceIndexes[index];
+    }
+
+    public void clear() {
+        Arrays.fill(results, 0, size, null);
+        size = 0;
+    }
+}